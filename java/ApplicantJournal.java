@@ -0,0 +1,354 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The applicants.txt log, kept append-only and written by a single background thread.
+ *
+ * Removing an applicant appends a tombstone line ("#removed <username>") instead of rewriting
+ * the file. An in-memory index maps each username to the offsets of its live lines, keyed like
+ * the old removal by the text before the first space, so a removal never reads the file.
+ *
+ * Callers only put their line on a lock-free queue. The writer thread takes everything that has
+ * queued up, writes it with one call and then syncs the file according to APPLICANTS_FSYNC:
+ * "none" leaves it to the operating system, "interval" syncs at most every
+ * APPLICANTS_FSYNC_INTERVAL_MS and "batch" syncs after every write. The same thread owns the
+ * index and rewrites the file without dead lines and tombstones once they make up more than
+ * half of it, so compaction never races with an append.
+ */
+class ApplicantJournal {
+    private static final String TOMBSTONE = "#removed ";
+    private static final long MIN_COMPACT_BYTES = 64 * 1024;
+
+    private final File file;
+    private final String fsyncPolicy;
+    private final long fsyncIntervalNanos;
+    private final long compactIntervalNanos;
+    private final Queue<String> queue = new ConcurrentLinkedQueue<>();
+    private volatile Thread writer;
+    private volatile boolean closing;
+
+    // Owned by the writer thread once it has started
+    private FileChannel channel;
+    private final Map<String, List<Line>> index = new HashMap<>();
+    private final Set<Long> deadOffsets = new HashSet<>();
+    private long deadBytes;
+    private long lastSync = System.nanoTime();
+    private long lastCompactCheck = System.nanoTime();
+
+    private final AtomicInteger depth = new AtomicInteger();
+    private final AtomicInteger maxDepth = new AtomicInteger();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong lines = new AtomicLong();
+    private final AtomicLong syncs = new AtomicLong();
+    private final AtomicLong compactions = new AtomicLong();
+    private final AtomicLong totalFlushNanos = new AtomicLong();
+    private final AtomicLong maxFlushNanos = new AtomicLong();
+    private volatile int indexedUsernames;
+
+    ApplicantJournal(File file, String fsyncPolicy, long fsyncIntervalMs, long compactIntervalSeconds) {
+        this.file = file;
+        this.fsyncPolicy = fsyncPolicy;
+        this.fsyncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, fsyncIntervalMs));
+        this.compactIntervalNanos = TimeUnit.SECONDS.toNanos(compactIntervalSeconds);
+    }
+
+    /**
+     * Opens the journal from the APPLICANTS_* settings and starts its writer thread.
+     *
+     * @return          the open journal
+     * @throws IOException if the file cannot be read
+     */
+    static ApplicantJournal fromConfig() throws IOException {
+        ApplicantJournal journal = new ApplicantJournal(new File(Server.get("APPLICANTS_FILE", "applicants.txt")),
+                Server.get("APPLICANTS_FSYNC", "none"),
+                Server.getInt("APPLICANTS_FSYNC_INTERVAL_MS", 1000),
+                Server.getInt("APPLICANTS_COMPACT_INTERVAL_SECONDS", 60));
+        journal.start();
+        return journal;
+    }
+
+    /**
+     * Indexes the existing file and starts the writer thread, which drains the queue on shutdown.
+     *
+     * @throws IOException if the file cannot be read
+     */
+    void start() throws IOException {
+        open();
+        writer = SessionExecutor.namedThreads("applicant-journal-").newThread(this::work);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close, "applicant-journal-shutdown"));
+    }
+
+    /**
+     * Queues a line for the log.
+     *
+     * @param  data   the line, without a line separator
+     */
+    void append(String data) {
+        enqueue(data);
+    }
+
+    /**
+     * Queues a tombstone that removes every line of an applicant.
+     *
+     * @param  username   the username the lines start with
+     */
+    void remove(String username) {
+        enqueue(TOMBSTONE + username);
+    }
+
+    private void enqueue(String line) {
+        queue.offer(line);
+        maxDepth.accumulateAndGet(depth.incrementAndGet(), Math::max);
+        LockSupport.unpark(writer);
+    }
+
+    private void work() {
+        long idleNanos = compactIntervalNanos > 0 ? Math.min(fsyncIntervalNanos, compactIntervalNanos) : fsyncIntervalNanos;
+        List<String> batch = new ArrayList<>();
+        while (true) {
+            String line;
+            while ((line = queue.poll()) != null) {
+                batch.add(line);
+            }
+            if (!batch.isEmpty()) {
+                depth.addAndGet(-batch.size());
+                flush(batch);
+                batch.clear();
+            } else if (closing) {
+                break;
+            }
+            maintain();
+            if (queue.isEmpty() && !closing) {
+                LockSupport.parkNanos(this, idleNanos);
+            }
+        }
+        sync();
+    }
+
+    private void flush(List<String> batch) {
+        long started = System.nanoTime();
+        StringBuilder content = new StringBuilder();
+        try {
+            long offset = channel.size();
+            for (String line : batch) {
+                int length = line.getBytes(StandardCharsets.UTF_8).length + 1;
+                if (line.startsWith(TOMBSTONE)) {
+                    String username = line.substring(TOMBSTONE.length());
+                    if (!index.containsKey(username)) {
+                        continue;
+                    }
+                    markRemoved(username);
+                    deadBytes += length;
+                } else {
+                    indexLine(line, offset, length);
+                }
+                content.append(line).append('\n');
+                offset += length;
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(content.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            if ("batch".equals(fsyncPolicy)) {
+                sync();
+            }
+        } catch (IOException e) {
+            System.out.println("Error writing " + batch.size() + " lines to " + file + ": " + e.getMessage());
+        }
+        long elapsed = System.nanoTime() - started;
+        batches.incrementAndGet();
+        lines.addAndGet(batch.size());
+        totalFlushNanos.addAndGet(elapsed);
+        maxFlushNanos.accumulateAndGet(elapsed, Math::max);
+        indexedUsernames = index.size();
+    }
+
+    private void maintain() {
+        long now = System.nanoTime();
+        if ("interval".equals(fsyncPolicy) && now - lastSync >= fsyncIntervalNanos) {
+            sync();
+        }
+        if (compactIntervalNanos > 0 && now - lastCompactCheck >= compactIntervalNanos) {
+            lastCompactCheck = now;
+            compactIfWorthwhile();
+        }
+    }
+
+    private void sync() {
+        try {
+            channel.force(false);
+            syncs.incrementAndGet();
+        } catch (IOException e) {
+            System.out.println("Error syncing " + file + ": " + e.getMessage());
+        }
+        lastSync = System.nanoTime();
+    }
+
+    /**
+     * Builds the index from the existing file, applying its tombstones.
+     *
+     * @throws IOException if the file cannot be read
+     */
+    private void open() throws IOException {
+        index.clear();
+        deadOffsets.clear();
+        deadBytes = 0;
+        if (file.exists()) {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+                long offset = 0;
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    long length = line.getBytes(StandardCharsets.UTF_8).length + 1;
+                    if (line.startsWith(TOMBSTONE)) {
+                        markRemoved(line.substring(TOMBSTONE.length()));
+                        deadBytes += length;
+                    } else {
+                        indexLine(line, offset, length);
+                    }
+                    offset += length;
+                }
+            }
+        }
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        indexedUsernames = index.size();
+    }
+
+    private void indexLine(String line, long offset, long length) {
+        // Like the old removal, only lines of the form "<username> ..." belong to an applicant
+        int space = line.indexOf(' ');
+        if (space > 0) {
+            index.computeIfAbsent(line.substring(0, space), key -> new ArrayList<>()).add(new Line(offset, length));
+        }
+    }
+
+    private void markRemoved(String username) {
+        List<Line> removed = index.remove(username);
+        if (removed != null) {
+            for (Line line : removed) {
+                deadOffsets.add(line.offset);
+                deadBytes += line.length;
+            }
+        }
+    }
+
+    private void compactIfWorthwhile() {
+        try {
+            long size = channel.size();
+            if (deadOffsets.isEmpty() || deadBytes < MIN_COMPACT_BYTES || deadBytes * 2 < size) {
+                return;
+            }
+            compact();
+        } catch (IOException e) {
+            System.out.println("Error compacting " + file + ": " + e.getMessage());
+        }
+    }
+
+    private void compact() throws IOException {
+        File temp = new File(file.getPath() + ".compact");
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+             Writer out = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(temp.toPath()), StandardCharsets.UTF_8))) {
+            long offset = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                long length = line.getBytes(StandardCharsets.UTF_8).length + 1;
+                if (!line.startsWith(TOMBSTONE) && !deadOffsets.contains(offset)) {
+                    out.write(line);
+                    out.write('\n');
+                }
+                offset += length;
+            }
+        }
+        channel.close();
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        open();
+        compactions.incrementAndGet();
+    }
+
+    /**
+     * Writes out everything queued so far and stops the writer thread.
+     */
+    void close() {
+        closing = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns the number of lines waiting for the writer thread.
+     *
+     * @return          the queue depth
+     */
+    int queued() {
+        return depth.get();
+    }
+
+    /**
+     * Logs describe() every intervalSeconds seconds.
+     *
+     * @param  intervalSeconds   the reporting interval, or 0 to disable
+     */
+    void startReporting(int intervalSeconds) {
+        if (intervalSeconds <= 0) {
+            return;
+        }
+        Executors.newSingleThreadScheduledExecutor(SessionExecutor.namedThreads("applicant-journal-stats-")).scheduleAtFixedRate(
+                () -> System.out.println("Applicant log: " + describe()), intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Describes the queue and the write counters.
+     *
+     * @return          a one-line summary for logging
+     */
+    String describe() {
+        long count = Math.max(1, batches.get());
+        return "queued=" + depth.get() + ", maxQueued=" + maxDepth.get() + ", batches=" + batches.get() +
+               ", lines=" + lines.get() + ", fsync=" + fsyncPolicy + ", syncs=" + syncs.get() +
+               ", avgFlushUs=" + TimeUnit.NANOSECONDS.toMicros(totalFlushNanos.get() / count) +
+               ", maxFlushUs=" + TimeUnit.NANOSECONDS.toMicros(maxFlushNanos.get()) +
+               ", indexedUsernames=" + indexedUsernames + ", compactions=" + compactions.get();
+    }
+
+    /**
+     * Where a live line starts in the file, and its length including the line separator.
+     */
+    private static class Line {
+        final long offset;
+        final long length;
+
+        Line(long offset, long length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
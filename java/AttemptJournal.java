@@ -0,0 +1,231 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An append-only local log of answered questions that have not reached the database yet.
+ *
+ * Every answer is written here as soon as it is given, before it waits in memory for a batch
+ * insert. Once a batch commits, a marker line listing its sequence numbers is appended. On
+ * startup the rows without a marker are returned by recover() for replay. The log is split
+ * into segments of about ATTEMPT_JOURNAL_SEGMENT_BYTES, and a full segment is deleted as soon
+ * as every row in it has committed.
+ *
+ * Line format: "A seq participantId challengeId attemptNumber questionId correct score timeTaken"
+ * for an answer and "C seq seq ..." for a commit marker.
+ *
+ * Answers the database refuses outright are appended, in the same answer format, to
+ * dead-letter.journal in the same directory, which is never replayed automatically.
+ */
+class AttemptJournal {
+    private static final String DEAD_LETTER_FILE = "dead-letter.journal";
+
+    private final File directory;
+    private final long segmentBytes;
+    private final boolean fsync;
+    private long nextSeq = 1;
+    private int nextSegment = 1;
+    private Segment current;
+
+    AttemptJournal(File directory, long segmentBytes, boolean fsync) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.fsync = fsync;
+    }
+
+    /**
+     * Reads the segments left by earlier runs.
+     *
+     * @return          the rows that were journaled but never marked committed
+     * @throws IOException if a segment cannot be read
+     */
+    synchronized List<AttemptWriter.Row> recover() throws IOException {
+        directory.mkdirs();
+        Map<Long, AttemptWriter.Row> rows = new LinkedHashMap<>();
+        Set<Long> committed = new HashSet<>();
+        for (File file : segmentFiles()) {
+            nextSegment = Math.max(nextSegment, segmentNumber(file) + 1);
+            try (BufferedReader reader = new BufferedReader(new FileReader(file, StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] fields = line.split(" ");
+                    try {
+                        if (fields[0].equals("A") && fields.length == 9) {
+                            AttemptWriter.Row row = new AttemptWriter.Row(Integer.parseInt(fields[2]), Integer.parseInt(fields[3]),
+                                    Integer.parseInt(fields[5]), Integer.parseInt(fields[4]), fields[6].equals("1"),
+                                    Integer.parseInt(fields[7]), Long.parseLong(fields[8]));
+                            row.seq = Long.parseLong(fields[1]);
+                            rows.put(row.seq, row);
+                            nextSeq = Math.max(nextSeq, row.seq + 1);
+                        } else if (fields[0].equals("C")) {
+                            for (int i = 1; i < fields.length; i++) {
+                                committed.add(Long.parseLong(fields[i]));
+                            }
+                        }
+                    } catch (NumberFormatException e) {
+                        // A line torn by a crash mid-write; everything before it is intact
+                        System.out.println("Skipping damaged attempt journal line in " + file + ": " + line);
+                    }
+                }
+            }
+        }
+        rows.keySet().removeAll(committed);
+        return new ArrayList<>(rows.values());
+    }
+
+    /**
+     * Deletes the segments of earlier runs once their rows have been replayed.
+     */
+    synchronized void discardRecovered() {
+        for (File file : segmentFiles()) {
+            if (current == null || !file.equals(current.file)) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Writes an answer to the journal and gives it a sequence number.
+     *
+     * @param  row    the answer
+     * @throws IOException if the journal cannot be written
+     */
+    synchronized void append(AttemptWriter.Row row) throws IOException {
+        Segment segment = writableSegment();
+        row.seq = nextSeq++;
+        row.segment = segment;
+        segment.pending++;
+        segment.write(answerLine(row));
+    }
+
+    /**
+     * Sets aside answers the database will not accept. They are still passed to committed()
+     * afterwards, so they are not replayed on the next start.
+     *
+     * @param  rows   the refused answers
+     * @throws IOException if the dead-letter file cannot be written
+     */
+    synchronized void deadLetter(List<AttemptWriter.Row> rows) throws IOException {
+        directory.mkdirs();
+        StringBuilder lines = new StringBuilder();
+        for (AttemptWriter.Row row : rows) {
+            lines.append(answerLine(row)).append('\n');
+        }
+        try (FileOutputStream out = new FileOutputStream(new File(directory, DEAD_LETTER_FILE), true)) {
+            out.write(lines.toString().getBytes(StandardCharsets.UTF_8));
+            if (fsync) {
+                out.getFD().sync();
+            }
+        }
+    }
+
+    private static String answerLine(AttemptWriter.Row row) {
+        return "A " + row.seq + " " + row.participantId + " " + row.challengeId + " " + row.attemptNumber + " " +
+               row.questionId + " " + (row.isCorrect ? 1 : 0) + " " + row.score + " " + row.timeTaken;
+    }
+
+    /**
+     * Marks rows as stored in the database, deleting segments that no longer hold any pending row.
+     *
+     * @param  rows   the rows of a committed batch
+     * @throws IOException if the marker cannot be written
+     */
+    synchronized void committed(List<AttemptWriter.Row> rows) throws IOException {
+        StringBuilder marker = new StringBuilder("C");
+        for (AttemptWriter.Row row : rows) {
+            if (row.segment != null) {
+                marker.append(' ').append(row.seq);
+            }
+        }
+        if (marker.length() > 1) {
+            writableSegment().write(marker.toString());
+        }
+        for (AttemptWriter.Row row : rows) {
+            Segment segment = (Segment) row.segment;
+            row.segment = null;
+            if (segment != null && --segment.pending == 0 && segment != current) {
+                segment.delete();
+            }
+        }
+    }
+
+    private Segment writableSegment() throws IOException {
+        if (current != null && current.size >= segmentBytes) {
+            Segment full = current;
+            current = null;
+            full.close();
+            if (full.pending == 0) {
+                full.delete();
+            }
+        }
+        if (current == null) {
+            current = new Segment(new File(directory, "attempts-" + (nextSegment++) + ".journal"));
+        }
+        return current;
+    }
+
+    private File[] segmentFiles() {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith("attempts-") && name.endsWith(".journal"));
+        if (files == null) {
+            return new File[0];
+        }
+        Arrays.sort(files, (a, b) -> Integer.compare(segmentNumber(a), segmentNumber(b)));
+        return files;
+    }
+
+    private static int segmentNumber(File file) {
+        String name = file.getName();
+        return Integer.parseInt(name.substring("attempts-".length(), name.length() - ".journal".length()));
+    }
+
+    /**
+     * One journal file and the number of its answers still waiting for the database.
+     */
+    private class Segment {
+        private final File file;
+        private final FileOutputStream out;
+        private long size;
+        private int pending;
+
+        Segment(File file) throws IOException {
+            this.file = file;
+            this.out = new FileOutputStream(file, true);
+            this.size = file.length();
+        }
+
+        void write(String line) throws IOException {
+            byte[] bytes = (line + "\n").getBytes(StandardCharsets.UTF_8);
+            // Unbuffered, so a written line survives a crash of the server process
+            out.write(bytes);
+            if (fsync) {
+                out.getFD().sync();
+            }
+            size += bytes.length;
+        }
+
+        void close() {
+            try {
+                out.close();
+            } catch (IOException e) {
+                System.out.println("Error closing attempt journal " + file + ": " + e.getMessage());
+            }
+        }
+
+        void delete() {
+            close();
+            if (!file.delete()) {
+                System.out.println("Could not delete attempt journal " + file);
+            }
+        }
+    }
+}
@@ -0,0 +1,314 @@
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTransientException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.sql.DataSource;
+
+/**
+ * Writes answered questions to participant_attempts in batches.
+ *
+ * Each attempt keeps its answers in memory, with a copy in the AttemptJournal, and hands them
+ * over when it completes, times out or is abandoned. A single writer thread gathers the rows
+ * of many attempts, whole attempts at a time, until it holds ATTEMPT_BATCH_SIZE rows or
+ * ATTEMPT_FLUSH_MS have passed since the first attempt was waiting, and inserts them with one
+ * JDBC batch in one transaction. The inserts use INSERT IGNORE on the unique answer key, so a
+ * row replayed from the journal after a crash is stored at most once.
+ *
+ * A batch that fails with a transient error, such as a lost connection or a deadlock, is
+ * retried up to ATTEMPT_MAX_RETRIES times and otherwise left in the journal for the next
+ * start. A batch that fails for any other reason is inserted again row by row, and the rows
+ * the database still refuses are moved to the journal's dead-letter file, so one bad row never
+ * holds up the answers queued behind it. An attempt that cannot be queued within
+ * ATTEMPT_SUBMIT_TIMEOUT_MS stays in the journal as well, rather than holding up the thread
+ * that completed it.
+ */
+class AttemptWriter {
+    private static final String INSERT_QUERY = "INSERT IGNORE INTO participant_attempts (participant_id, challenge_id, question_id, attempt_number, is_correct, score, time_taken) " +
+                                               "VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+    private final DataSource dataSource;
+    private final AttemptJournal journal;
+    private final int batchSize;
+    private final long flushMs;
+    private final int maxRetries;
+    private final long submitTimeoutMs;
+    private final BlockingQueue<List<Row>> queue;
+
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong rowsWritten = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong deadLetters = new AtomicLong();
+    private final AtomicLong deferred = new AtomicLong();
+    private final AtomicLong maxFlushNanos = new AtomicLong();
+
+    AttemptWriter(DataSource dataSource, AttemptJournal journal, int batchSize, long flushMs, int maxRetries, long submitTimeoutMs,
+                  int queueCapacity) {
+        this.dataSource = dataSource;
+        this.journal = journal;
+        this.batchSize = batchSize;
+        this.flushMs = flushMs;
+        this.maxRetries = maxRetries;
+        this.submitTimeoutMs = submitTimeoutMs;
+        this.queue = new LinkedBlockingQueue<>(queueCapacity);
+    }
+
+    /**
+     * Creates a writer from the ATTEMPT_* settings.
+     *
+     * @param  dataSource   the pool to insert the rows with
+     * @return              the writer, not yet started
+     */
+    static AttemptWriter fromConfig(DataSource dataSource) {
+        AttemptJournal journal = new AttemptJournal(new File(Server.get("ATTEMPT_JOURNAL_DIR", "journal")),
+                Server.getInt("ATTEMPT_JOURNAL_SEGMENT_BYTES", 4 * 1024 * 1024),
+                Boolean.parseBoolean(Server.get("ATTEMPT_JOURNAL_FSYNC", "false")));
+        return new AttemptWriter(dataSource, journal,
+                Server.getInt("ATTEMPT_BATCH_SIZE", 500),
+                Server.getInt("ATTEMPT_FLUSH_MS", 200),
+                Server.getInt("ATTEMPT_MAX_RETRIES", 5),
+                Server.getInt("ATTEMPT_SUBMIT_TIMEOUT_MS", 1000),
+                Server.getInt("ATTEMPT_QUEUE_CAPACITY", 10000));
+    }
+
+    /**
+     * Replays answers left in the journal by an earlier run, then starts the writer thread.
+     *
+     * @throws IOException  if the journal cannot be read
+     * @throws SQLException if the replayed answers cannot be stored for a transient reason
+     * @throws InterruptedException if interrupted while waiting to retry
+     */
+    void start() throws IOException, SQLException, InterruptedException {
+        List<Row> recovered = journal.recover();
+        for (int from = 0; from < recovered.size(); from += batchSize) {
+            flush(recovered.subList(from, Math.min(recovered.size(), from + batchSize)));
+        }
+        if (!recovered.isEmpty()) {
+            System.out.println("Replayed " + recovered.size() + " answers from the attempt journal");
+        }
+        journal.discardRecovered();
+
+        Thread thread = SessionExecutor.namedThreads("attempt-writer-").newThread(this::work);
+        thread.start();
+    }
+
+    /**
+     * Journals an answer as soon as it is given.
+     *
+     * @param  row    the answer
+     * @return        the same row, to keep with the attempt until it is submitted
+     */
+    Row journal(Row row) {
+        try {
+            journal.append(row);
+        } catch (IOException e) {
+            // The row still reaches the database with its attempt, it is only unprotected against a crash
+            System.out.println("Error writing the attempt journal: " + e.getMessage());
+        }
+        return row;
+    }
+
+    /**
+     * Queues the answers of an attempt for the next batch, all together.
+     *
+     * @param  rows   the journaled answers
+     */
+    void submit(List<Row> rows) {
+        try {
+            if (!queue.offer(rows, submitTimeoutMs, TimeUnit.MILLISECONDS)) {
+                deferred.addAndGet(rows.size());
+                System.out.println("Attempt writer is behind, leaving " + rows.size() + " answers in the journal for the next start");
+            }
+        } catch (InterruptedException e) {
+            // The rows are in the journal and are replayed on the next start
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void work() {
+        List<Row> batch = new ArrayList<>(batchSize);
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                batch.addAll(queue.take());
+                // Wait a little for more attempts, but never longer than flushMs after the first
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushMs);
+                while (batch.size() < batchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    List<Row> next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.addAll(next);
+                }
+                flush(batch);
+            } catch (SQLException e) {
+                // Still unwritten after maxRetries transient failures; the rows wait in the journal
+                System.out.println("Giving up on " + batch.size() + " attempt rows until the next start: " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Stores a batch, falling back to one row at a time if the database refuses it.
+     *
+     * @param  batch   the rows to store
+     * @throws SQLException if the batch kept failing for a transient reason
+     * @throws InterruptedException if interrupted while waiting to retry
+     */
+    private void flush(List<Row> batch) throws SQLException, InterruptedException {
+        List<Row> done = batch;
+        try {
+            long started = System.nanoTime();
+            insertRetrying(batch);
+            maxFlushNanos.accumulateAndGet(System.nanoTime() - started, Math::max);
+        } catch (SQLException e) {
+            if (isTransient(e)) {
+                throw e;
+            }
+            System.out.println("Error writing " + batch.size() + " attempt rows, writing them one by one: " + e.getMessage());
+            done = new ArrayList<>(batch.size());
+            List<Row> refused = new ArrayList<>();
+            for (Row row : batch) {
+                try {
+                    insertRetrying(List.of(row));
+                    done.add(row);
+                } catch (SQLException rowError) {
+                    if (isTransient(rowError)) {
+                        markCommitted(done);
+                        throw rowError;
+                    }
+                    System.out.println("Attempt row refused (participant " + row.participantId + ", challenge " + row.challengeId +
+                                       ", attempt " + row.attemptNumber + ", question " + row.questionId + "): " + rowError.getMessage());
+                    refused.add(row);
+                }
+            }
+            if (!refused.isEmpty()) {
+                try {
+                    journal.deadLetter(refused);
+                    deadLetters.addAndGet(refused.size());
+                    done.addAll(refused);
+                } catch (IOException ioError) {
+                    System.out.println("Error writing the attempt dead-letter file: " + ioError.getMessage());
+                }
+            }
+        }
+        markCommitted(done);
+    }
+
+    private void insertRetrying(List<Row> rows) throws SQLException, InterruptedException {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                insert(rows);
+                return;
+            } catch (SQLException e) {
+                if (!isTransient(e) || attempt >= maxRetries) {
+                    throw e;
+                }
+                retries.incrementAndGet();
+                System.out.println("Error writing " + rows.size() + " attempt rows, retrying: " + e.getMessage());
+                Thread.sleep(1000L << Math.min(attempt, 4));
+            }
+        }
+    }
+
+    /**
+     * Tells apart the failures worth retrying: lost connections, deadlocks and lock or pool timeouts.
+     *
+     * @param  e        the failure
+     * @return          true if the same statement may succeed later
+     */
+    private static boolean isTransient(SQLException e) {
+        String state = e.getSQLState();
+        return e instanceof SQLTransientException || (state != null && state.startsWith("08"));
+    }
+
+    private void markCommitted(List<Row> rows) {
+        try {
+            journal.committed(rows);
+        } catch (IOException e) {
+            System.out.println("Error writing the attempt journal: " + e.getMessage());
+        }
+    }
+
+    private void insert(List<Row> rows) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement statement = connection.prepareStatement(INSERT_QUERY)) {
+                for (Row row : rows) {
+                    statement.setInt(1, row.participantId);
+                    statement.setInt(2, row.challengeId);
+                    statement.setInt(3, row.questionId);
+                    statement.setInt(4, row.attemptNumber);
+                    statement.setBoolean(5, row.isCorrect);
+                    statement.setInt(6, row.score);
+                    statement.setLong(7, row.timeTaken);
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+            connection.commit();
+        }
+        batches.incrementAndGet();
+        rowsWritten.addAndGet(rows.size());
+    }
+
+    /**
+     * Logs describe() every intervalSeconds seconds.
+     *
+     * @param  intervalSeconds   the reporting interval, or 0 to disable
+     */
+    void startReporting(int intervalSeconds) {
+        if (intervalSeconds <= 0) {
+            return;
+        }
+        Executors.newSingleThreadScheduledExecutor(SessionExecutor.namedThreads("attempt-writer-stats-")).scheduleAtFixedRate(
+                () -> System.out.println("Attempt writer: " + describe()), intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Describes the batch counters.
+     *
+     * @return          a one-line summary for logging
+     */
+    String describe() {
+        return "queued=" + queue.size() + ", batches=" + batches.get() + ", rows=" + rowsWritten.get() + ", retries=" + retries.get() +
+               ", deadLetters=" + deadLetters.get() + ", deferred=" + deferred.get() + ", maxFlushMs=" + TimeUnit.NANOSECONDS.toMillis(maxFlushNanos.get());
+    }
+
+    /**
+     * One answered question of an attempt.
+     */
+    static class Row {
+        final int participantId;
+        final int challengeId;
+        final int questionId;
+        final int attemptNumber;
+        final boolean isCorrect;
+        final int score;
+        final long timeTaken;
+        // Set by the journal
+        long seq;
+        Object segment;
+
+        Row(int participantId, int challengeId, int questionId, int attemptNumber, boolean isCorrect, int score, long timeTaken) {
+            this.participantId = participantId;
+            this.challengeId = challengeId;
+            this.questionId = questionId;
+            this.attemptNumber = attemptNumber;
+            this.isCorrect = isCorrect;
+            this.score = score;
+            this.timeTaken = timeTaken;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A content-addressed store for applicant images on the local disk.
+ *
+ * Each blob is named by the SHA-256 of its content and kept at BLOB_DIR/ab/cd/<hash>, so no
+ * directory grows beyond a few thousand entries. The database only holds the 64-character
+ * hash, which makes confirming an applicant a copy of that reference instead of the image,
+ * and identical images are stored once. A blob is written to a temporary file and moved into
+ * place only when complete, so a reader never sees part of one.
+ */
+class BlobStore {
+    private final File root;
+
+    private final AtomicLong stored = new AtomicLong();
+    private final AtomicLong deduplicated = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+
+    BlobStore(File root) {
+        this.root = root;
+    }
+
+    /**
+     * Creates the store from the BLOB_* settings.
+     *
+     * @return          the store
+     */
+    static BlobStore fromConfig() {
+        return new BlobStore(new File(Server.get("BLOB_DIR", "blobs")));
+    }
+
+    /**
+     * Copies content into the store, hashing it on the way.
+     *
+     * @param  content   the content, read to its end but not closed
+     * @return           the SHA-256 of the content in hex, under which it is stored
+     * @throws IOException if the content cannot be read or stored
+     */
+    String put(InputStream content) throws IOException {
+        File incoming = new File(root, "incoming");
+        incoming.mkdirs();
+        File temp = File.createTempFile("blob-", ".tmp", incoming);
+        try {
+            MessageDigest digest = sha256();
+            long length;
+            try (OutputStream out = new DigestOutputStream(Files.newOutputStream(temp.toPath()), digest)) {
+                length = content.transferTo(out);
+            }
+            String hash = hex(digest.digest());
+            File target = file(hash);
+            if (target.exists()) {
+                deduplicated.incrementAndGet();
+                return hash;
+            }
+            target.getParentFile().mkdirs();
+            try {
+                Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileAlreadyExistsException e) {
+                // Stored by a concurrent upload of the same image
+                deduplicated.incrementAndGet();
+                return hash;
+            }
+            stored.incrementAndGet();
+            bytesWritten.addAndGet(length);
+            return hash;
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+
+    /**
+     * Returns the file a blob is kept in.
+     *
+     * @param  hash   the hash of the blob
+     * @return        the file, which exists only if the blob was stored
+     */
+    File file(String hash) {
+        if (!hash.matches("[0-9a-f]{64}")) {
+            throw new IllegalArgumentException("Not a blob hash: " + hash);
+        }
+        return new File(new File(new File(root, hash.substring(0, 2)), hash.substring(2, 4)), hash);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Logs describe() every intervalSeconds seconds.
+     *
+     * @param  intervalSeconds   the reporting interval, or 0 to disable
+     */
+    void startReporting(int intervalSeconds) {
+        if (intervalSeconds <= 0) {
+            return;
+        }
+        Executors.newSingleThreadScheduledExecutor(SessionExecutor.namedThreads("blob-store-stats-")).scheduleAtFixedRate(
+                () -> System.out.println("Blob store: " + describe()), intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Describes the store counters.
+     *
+     * @return          a one-line summary for logging
+     */
+    String describe() {
+        return "stored=" + stored.get() + ", deduplicated=" + deduplicated.get() + ", bytesWritten=" + bytesWritten.get();
+    }
+}
@@ -0,0 +1,87 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+
+/**
+ * Notices changes to the challenge catalog made outside this server, such as through the
+ * web application, and tells the caches built from it.
+ *
+ * Every CATALOG_POLL_SECONDS it reads a cheap fingerprint of the challenges, questions and
+ * challenge_questions tables: row counts, the latest updated_at and a checksum of the links.
+ * A different fingerprint notifies every listener.
+ */
+class CatalogWatcher {
+    private static final String FINGERPRINT_QUERY =
+            "SELECT CONCAT_WS('|', " +
+            "(SELECT CONCAT(COUNT(*), ':', COALESCE(MAX(updated_at), '')) FROM challenges), " +
+            "(SELECT CONCAT(COUNT(*), ':', COALESCE(MAX(updated_at), '')) FROM questions), " +
+            "(SELECT CONCAT(COUNT(*), ':', COALESCE(MAX(id), 0), ':', COALESCE(SUM(challenge_id * 31 + question_id), 0)) FROM challenge_questions)) AS fingerprint";
+
+    private final DataSource dataSource;
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+    private volatile String fingerprint;
+
+    CatalogWatcher(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Registers a callback to run after the catalog changes.
+     *
+     * @param  listener   the callback, run on the watcher thread
+     */
+    void addListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Starts polling the catalog fingerprint.
+     *
+     * @param  intervalSeconds   the polling interval, or 0 to disable
+     */
+    void start(int intervalSeconds) {
+        if (intervalSeconds <= 0) {
+            return;
+        }
+        Executors.newSingleThreadScheduledExecutor(SessionExecutor.namedThreads("catalog-watcher-")).scheduleWithFixedDelay(
+                this::check, 0, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Tells every listener that the catalog changed, for changes the server makes itself.
+     */
+    void changed() {
+        for (Runnable listener : listeners) {
+            try {
+                listener.run();
+            } catch (RuntimeException e) {
+                System.out.println("Error refreshing after a catalog change: " + e.getMessage());
+            }
+        }
+    }
+
+    private void check() {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(FINGERPRINT_QUERY)) {
+            ResultSet resultSet = statement.executeQuery();
+            if (!resultSet.next()) {
+                return;
+            }
+            String current = resultSet.getString("fingerprint");
+            String previous = fingerprint;
+            fingerprint = current;
+            if (previous != null && !previous.equals(current)) {
+                System.out.println("Challenge catalog changed, refreshing caches");
+                changed();
+            }
+        } catch (SQLException e) {
+            System.out.println("Error checking the challenge catalog: " + e.getMessage());
+        }
+    }
+}
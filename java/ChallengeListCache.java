@@ -0,0 +1,159 @@
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.sql.DataSource;
+
+/**
+ * Holds the viewChallenges response, fully rendered, for the challenges that are currently open.
+ *
+ * The listing is rebuilt every CHALLENGE_LIST_REFRESH_SECONDS, whenever the CatalogWatcher
+ * reports a change and just after midnight by the database clock, when challenges ending that
+ * day drop out of the end_date filter. Serving the listing is a single write of the rendered
+ * text and needs no database access.
+ */
+class ChallengeListCache {
+    static final String LIST_QUERY = "SELECT c.id, c.name, c.start_date, c.end_date, c.duration, c.description, COUNT(q.id) AS num_questions " +
+                                     "FROM challenges c " +
+                                     "LEFT JOIN challenge_questions cq ON c.id = cq.challenge_id " +
+                                     "LEFT JOIN questions q ON cq.question_id = q.id " +
+                                     "WHERE c.end_date >= NOW() " +
+                                     "GROUP BY c.id";
+    private static final String SECONDS_TO_MIDNIGHT_QUERY = "SELECT TIMESTAMPDIFF(SECOND, NOW(), CURDATE() + INTERVAL 1 DAY) AS seconds_left";
+
+    private final DataSource dataSource;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(SessionExecutor.namedThreads("challenge-list-"));
+    private final AtomicLong served = new AtomicLong();
+    private volatile Rendered current;
+
+    ChallengeListCache(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Builds the first listing and schedules the periodic and midnight rebuilds.
+     *
+     * @param  refreshSeconds   the interval between scheduled rebuilds, or 0 to rely on changes only
+     */
+    void start(int refreshSeconds) {
+        try {
+            rebuild();
+        } catch (SQLException e) {
+            System.out.println("Error building the challenge list: " + e.getMessage());
+        }
+        if (refreshSeconds > 0) {
+            scheduler.scheduleWithFixedDelay(this::rebuildQuietly, refreshSeconds, refreshSeconds, TimeUnit.SECONDS);
+        }
+        scheduleRollover();
+    }
+
+    /**
+     * Returns the rendered listing, ending with END_OF_CHALLENGES.
+     *
+     * @return          the response text
+     * @throws SQLException if there is no listing yet and it cannot be built
+     */
+    String render() throws SQLException {
+        Rendered rendered = current;
+        if (rendered == null) {
+            rendered = rebuild();
+        }
+        served.incrementAndGet();
+        return rendered.text;
+    }
+
+    /**
+     * Rebuilds the listing on the cache's own thread, for use as a catalog change listener.
+     */
+    void refresh() {
+        scheduler.execute(this::rebuildQuietly);
+    }
+
+    private void rebuildQuietly() {
+        try {
+            rebuild();
+        } catch (SQLException e) {
+            System.out.println("Error rebuilding the challenge list: " + e.getMessage());
+        }
+    }
+
+    private synchronized Rendered rebuild() throws SQLException {
+        String newline = System.lineSeparator();
+        StringBuilder text = new StringBuilder();
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(LIST_QUERY)) {
+            ResultSet resultSet = statement.executeQuery();
+            while (resultSet.next()) {
+                int id = resultSet.getInt("id");
+                String name = resultSet.getString("name");
+                Date startDate = resultSet.getDate("start_date");
+                Date endDate = resultSet.getDate("end_date");
+                int duration = resultSet.getInt("duration");
+                String description = resultSet.getString("description");
+                int numQuestions = resultSet.getInt("num_questions");
+
+                text.append("Challenge ID: ").append(id).append(newline);
+                text.append("Name: ").append(name).append(newline);
+                text.append("Description: ").append(description).append(newline);
+                text.append("Start Date: ").append(startDate).append(newline);
+                text.append("End Date: ").append(endDate).append(newline);
+                text.append("Duration: ").append(duration).append(" minutes").append(newline);
+                text.append("Number of Questions: ").append(numQuestions).append(newline);
+                text.append(newline);
+            }
+        }
+        // Indicate the end of challenges listing
+        text.append("END_OF_CHALLENGES").append(newline);
+
+        Rendered previous = current;
+        Rendered rendered = new Rendered(text.toString(), previous == null ? 1 : previous.version + 1);
+        current = rendered;
+        return rendered;
+    }
+
+    /**
+     * Schedules a rebuild for just after the next midnight of the database clock, then again
+     * every day after that.
+     */
+    private void scheduleRollover() {
+        long delaySeconds = TimeUnit.DAYS.toSeconds(1);
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(SECONDS_TO_MIDNIGHT_QUERY)) {
+            ResultSet resultSet = statement.executeQuery();
+            if (resultSet.next()) {
+                delaySeconds = resultSet.getLong("seconds_left");
+            }
+        } catch (SQLException e) {
+            System.out.println("Error reading the database clock, retrying the rollover in a day: " + e.getMessage());
+        }
+        scheduler.schedule(() -> {
+            rebuildQuietly();
+            scheduleRollover();
+        }, delaySeconds + 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Describes the listing currently served.
+     *
+     * @return          a one-line summary for logging
+     */
+    String describe() {
+        Rendered rendered = current;
+        return rendered == null ? "not built" : "version=" + rendered.version + ", chars=" + rendered.text.length() + ", served=" + served.get();
+    }
+
+    private static class Rendered {
+        final String text;
+        final long version;
+
+        Rendered(String text, long version) {
+            this.text = text;
+            this.version = version;
+        }
+    }
+}
@@ -1,10 +1,17 @@
 import java.io.*;
 import java.net.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
 
 public class Client {
     private static final String HOST = "localhost";
     private static final int PORT = 8001;
+    // Raw bytes per image chunk; a multiple of 3 so every chunk encodes without padding
+    private static final int IMAGE_CHUNK_BYTES = 48 * 1024;
 
     /**
      * A method to handle the main logic of the client program.
@@ -13,16 +20,10 @@ public class Client {
      * @return         void
      */
     public static void main(String[] args) {
-        try (Socket socket = new Socket(HOST, PORT)) {
-
-            OutputStream output = socket.getOutputStream();
-            PrintWriter writer = new PrintWriter(output, true);
-
-            InputStream input = socket.getInputStream();
-            BufferedReader reader = new BufferedReader(new InputStreamReader(input));
+        try (ProtocolClient server = new ProtocolClient(HOST, PORT)) {
 
             Scanner scanner = new Scanner(System.in);
-            handleMainMenuOptions(scanner, writer, reader);
+            handleMainMenuOptions(scanner, server);
 
         } catch (UnknownHostException ex) {
             System.out.println("Server not found: " + ex.getMessage());
@@ -53,7 +54,8 @@ public class Client {
         System.out.println("Participant Menu:");
         System.out.println("1. View Challenges");
         System.out.println("2. Attempt Challenge");
-        System.out.println("3. Logout");
+        System.out.println("3. View Leaderboard");
+        System.out.println("4. Logout");
     }
 
     /**
@@ -73,11 +75,10 @@ public class Client {
      * Registers an applicant by prompting the user for their information and sending it to the server.
      *
      * @param  scanner         the scanner object for user input
-     * @param  writer          the print writer object for sending messages to the server
-     * @param  reader          the buffered reader object for receiving messages from the server
+     * @param  server          the connection to the server
      * @return                 void
      */
-    private static void registerApplicant(Scanner scanner, PrintWriter writer,BufferedReader reader) {
+    private static void registerApplicant(Scanner scanner, ProtocolClient server) {
         System.out.print("Username: ");
         String username = scanner.nextLine();
         System.out.print("First Name: ");
@@ -93,61 +94,76 @@ public class Client {
         String password = readPasswordSecurely();
         System.out.print("Add image path: ");
         String imagePath = scanner.nextLine();
-
-        writer.println("register " + username + " " + firstName + " " + lastName + " " + schoolRegNumber + " " + email + " " + dob + " " + password+ " " + imagePath);  
+        File imageFile = new File(imagePath);
 
         try {
-            String response;
-            while ((response = reader.readLine()) != null && !response.isEmpty()) {
-                System.out.println(response);
-                if (response.contains("Applicant registered successfully!")) {
-                    // displayMainMenu();
-                    handleMainMenuOptions(scanner, writer, reader);
-                    return;
-                } else if(response.contains("Error registering applicant:")) {
-                    // displayMainMenu();
-                    handleMainMenuOptions(scanner, writer, reader);
-                    return;
-                }
+            if (!imageFile.isFile()) {
+                System.out.println("Image file not found: " + imagePath);
+                handleMainMenuOptions(scanner, server);
+                return;
             }
+
+            // The image follows the command as chunks instead of being read from the server's disk
+            List<CompletableFuture<ProtocolClient.Reply>> replies = new ArrayList<>();
+            replies.add(server.submit("register", username, firstName, lastName, schoolRegNumber, email, dob, password, "-"));
+            sendImage(imageFile, server, replies);
+            server.awaitAll(replies).print();
+            handleMainMenuOptions(scanner, server);
         } catch (IOException e) {
             System.out.println("Error during registration: " + e.getMessage());
         }
     }
+
+    /**
+     * Streams an image to the server as inputs of "<length> <base64>", ending with "0",
+     * without waiting for the replies. If the file cannot be read to its end, the upload is
+     * cancelled with "-1" so the server never stores a truncated image.
+     *
+     * @param  imageFile   the image to send
+     * @param  server      the connection to the server
+     * @param  replies     receives the reply to each input
+     * @throws IOException if the connection fails
+     */
+    private static void sendImage(File imageFile, ProtocolClient server, List<CompletableFuture<ProtocolClient.Reply>> replies) throws IOException {
+        byte[] buffer = new byte[IMAGE_CHUNK_BYTES];
+        try (InputStream input = new FileInputStream(imageFile)) {
+            int read;
+            while ((read = input.readNBytes(buffer, 0, buffer.length)) > 0) {
+                replies.add(server.submitInput(read + " " + Base64.getEncoder().encodeToString(Arrays.copyOf(buffer, read))));
+            }
+        } catch (IOException e) {
+            // If the connection failed instead, sending the cancellation fails too and ends the registration
+            System.out.println("Error reading image: " + e.getMessage());
+            replies.add(server.submitInput("-1"));
+            return;
+        }
+        replies.add(server.submitInput("0"));
+    }
     
     /**
      * Logs in a participant by prompting the user for their username and password,
      * sending the login command to the server, and handling the response.
      *
      * @param  scanner   the scanner object for user input
-     * @param  writer    the print writer object for sending messages to the server
-     * @param  reader    the buffered reader object for receiving messages from the server
+     * @param  server    the connection to the server
      * @return           void
      */
-    private static void loginParticipant(Scanner scanner, PrintWriter writer, BufferedReader reader) {
+    private static void loginParticipant(Scanner scanner, ProtocolClient server) {
         try {
             System.out.print("Enter username: ");
             String username = scanner.nextLine();
             String password = readPasswordSecurely();
     
-            // Send login command to server
-            writer.println("login participant");
-            writer.flush();
-            writer.println(username); 
-            writer.flush();
-            writer.println(password);
-            writer.flush();
-
-            // Read response from server
-            String response = reader.readLine();
-            System.out.println(response);
+            // Send login command and credentials to server
+            ProtocolClient.Reply reply = server.exchange(new String[] {"login", "participant"}, Arrays.asList(username, password));
+            reply.print();
     
-            if (response.equals("Login successful!")) {
+            if (reply.lines.contains("Login successful!")) {
                 // Display participant menu
                 displayParticipantMenu();
-                handleParticipantOptions(scanner, writer, reader);
+                handleParticipantOptions(scanner, server);
             } else {
-                handleMainMenuOptions(scanner, writer, reader);
+                handleMainMenuOptions(scanner, server);
             }
         } catch (IOException e) {
             System.out.println("Error during login: " + e.getMessage());
@@ -170,14 +186,12 @@ public class Client {
 
     /**
      * Handles the participant options based on the user's input. Displays the participant menu and allows the user to choose
-     * between viewing challenges, attempting challenges, or going back to the main menu. Reads and displays server responses
-     * for options other than going back to the main menu.
+     * between viewing challenges, attempting challenges, viewing a leaderboard, or going back to the main menu.
      *
      * @param  scanner   the scanner object for reading user input
-     * @param  writer    the print writer object for sending commands to the server
-     * @param  reader    the buffered reader object for reading server responses
+     * @param  server    the connection to the server
      */
-    private static void handleParticipantOptions(Scanner scanner, PrintWriter writer, BufferedReader reader) {
+    private static void handleParticipantOptions(Scanner scanner, ProtocolClient server) {
         String text;
         do {
             System.out.print("Choose an option: ");
@@ -185,14 +199,17 @@ public class Client {
 
             switch (text) {
                 case "1":
-                    viewChallenges(scanner,writer, reader);
+                    viewChallenges(scanner, server);
                     break;
                 case "2":
-                    attemptChallenge(scanner, writer, reader);
+                    attemptChallenge(scanner, server);
                     break;
                 case "3":
+                    viewLeaderboard(scanner, server);
+                    break;
+                case "4":
                     try {
-                        handleMainMenuOptions(scanner, writer, reader);
+                        handleMainMenuOptions(scanner, server);
                     } catch (Exception e) {
                         e.printStackTrace();
                     }
@@ -201,43 +218,23 @@ public class Client {
                     System.out.println("Invalid option");
                     break;
             }
-            // Read and display server responses
-            if (!text.equals("3")) {
-                String response;
-                try {
-                    while ((response = reader.readLine()) != null && !response.isEmpty()) {
-                        System.out.println(response);
-                        if (response.equals("Invalid command")) {
-                        }
-                    }
-                } catch (IOException e) {
-                    System.out.println("Error reading response: " + e.getMessage());
-                }
-            }
-        } while (!text.equals("3")); // Exit when user chooses to go back to the main menu
+        } while (!text.equals("4")); // Exit when user chooses to go back to the main menu
     }
 
-    private static void loginSchoolRepresentative(Scanner scanner, PrintWriter writer, BufferedReader reader) {
+    private static void loginSchoolRepresentative(Scanner scanner, ProtocolClient server) {
         try {
             System.out.print("Enter username: ");
             String username = scanner.nextLine();
             String password = readPasswordSecurely();    
-            // Send login command to server
-            writer.println("login school_representative");
-            writer.flush();
-            writer.println(username); 
-            writer.flush();
-            writer.println(password);
-            writer.flush();
-            // Read response from server
-            String response = reader.readLine();
-            System.out.println(response);
+            // Send login command and credentials to server
+            ProtocolClient.Reply reply = server.exchange(new String[] {"login", "school_representative"}, Arrays.asList(username, password));
+            reply.print();
     
-            if (response.equals("Login successful!")) {
+            if (reply.lines.contains("Login successful!")) {
                 displaySchoolRepMenu();
-                handleSchoolRepOptions(scanner, writer, reader);
+                handleSchoolRepOptions(scanner, server);
             } else {
-                handleMainMenuOptions(scanner, writer, reader);
+                handleMainMenuOptions(scanner, server);
             }
         } catch (IOException e) {
             System.out.println("Error during login: " + e.getMessage());
@@ -248,10 +245,9 @@ public class Client {
      * Handles the options for a school representative. Allows them to view applicants, confirm applicants, register a school, or go back to the main menu.
      *
      * @param  scanner   the scanner object for reading user input
-     * @param  writer    the print writer object for sending commands to the server
-     * @param  reader    the buffered reader object for reading server responses
+     * @param  server    the connection to the server
      */
-    private static void handleSchoolRepOptions(Scanner scanner, PrintWriter writer, BufferedReader reader) {
+    private static void handleSchoolRepOptions(Scanner scanner, ProtocolClient server) {
         String text;
         do {
             System.out.print("Choose an option: ");
@@ -259,17 +255,17 @@ public class Client {
 
             switch (text) {
                 case "1":
-                    viewApplicants(scanner,writer, reader);
+                    viewApplicants(scanner, server);
                     break;
                 case "2":
-                    confirmApplicant(scanner, writer,reader);
+                    confirmApplicant(scanner, server);
                     break;
                 case "3":
-                    registerSchool(scanner, writer,reader);
+                    registerSchool(scanner, server);
                     break;
                 case "4":
                     try {
-                        handleMainMenuOptions(scanner, writer, reader);
+                        handleMainMenuOptions(scanner, server);
                     } catch (Exception e) {
                         e.printStackTrace();
                     }
@@ -278,29 +274,18 @@ public class Client {
                     System.out.println("Invalid option");
                     continue;
             }
-
-            // Read and display server responses
-            String response;
-            try {
-                while ((response = reader.readLine()) != null && !response.isEmpty()) {
-                    System.out.println(response);
-                }
-            } catch (IOException e) {
-                System.out.println("Error reading response: " + e.getMessage());
-            }
-
         } while (!text.equals("4"));
     }
 
     /**
      * Registers a school by prompting the user for their information and sending it to the server.
+     * Each answer travels as its own field, so names may contain spaces.
      *
      * @param  scanner         the scanner object for user input
-     * @param  writer          the print writer object for sending messages to the server
-     * @param  reader          the buffered reader object for receiving messages from the server
+     * @param  server          the connection to the server
      * @return                 void
      */
-    private static void registerSchool(Scanner scanner, PrintWriter writer,BufferedReader reader) {
+    private static void registerSchool(Scanner scanner, ProtocolClient server) {
         System.out.print("School Name: ");
         String name = scanner.nextLine();
         System.out.print("District: ");
@@ -312,47 +297,48 @@ public class Client {
         System.out.println("Representative Name: ");
         String representativeName = scanner.nextLine();
 
-        writer.println("registerSchool " + name + " " + district + " " + schoolRegNumber + " " + representativeEmail + " " + representativeName);
-
         try {
-            String response;
-            while ((response = reader.readLine()) != null && !response.isEmpty()) {
-                System.out.println(response);
-                if (response.contains("School registered successfully!")) {
-                    displaySchoolRepMenu();
-                    handleSchoolRepOptions(scanner, writer, reader);
-                    return;
-                } else {
-                    handleSchoolRepOptions(scanner, writer, reader);
-                }
+            ProtocolClient.Reply reply = server.request("registerSchool", name, district, schoolRegNumber, representativeEmail, representativeName);
+            reply.print();
+            if (reply.lines.contains("School registered successfully!")) {
+                displaySchoolRepMenu();
             }
+            handleSchoolRepOptions(scanner, server);
         } catch (Exception e) {
             System.out.println("Error during registration: " + e.getMessage());
         }
     }
 
     /**
-     * Views the list of applicants by sending a request to the server and displaying the responses.
+     * Views the applicants of the representative's schools a page at a time, asking before
+     * each further page.
      *
      * @param  scanner         the scanner object for user input
-     * @param  writer          the print writer object for sending messages to the server
-     * @param  reader          the buffered reader object for receiving messages from the server
-     * @throws IOException     if there is an error reading the server response
+     * @param  server          the connection to the server
      */
-    private static void viewApplicants(Scanner scanner, PrintWriter writer, BufferedReader reader) {
-        writer.println("viewApplicants");
-        writer.flush();
-    
+    private static void viewApplicants(Scanner scanner, ProtocolClient server) {
+        String cursor = "-";
         try {
-            String response;
-            while ((response = reader.readLine()) != null) {
-                if (response.equals("END_OF_RESPONSE")) {
-                    break;
+            while (cursor != null) {
+                ProtocolClient.Reply reply = server.request("viewApplicants", cursor);
+
+                cursor = null;
+                for (String response : reply.lines) {
+                    if (response.startsWith("Next Cursor: ")) {
+                        cursor = response.substring("Next Cursor: ".length());
+                        continue;
+                    }
+                    System.out.println(response);
+                }
+                if (cursor != null) {
+                    System.out.print("Show more applicants? (y/n): ");
+                    if (!scanner.nextLine().trim().equalsIgnoreCase("y")) {
+                        cursor = null;
+                    }
                 }
-                System.out.println(response);
             }
             displaySchoolRepMenu();
-            handleSchoolRepOptions(scanner, writer, reader);
+            handleSchoolRepOptions(scanner, server);
         } catch (IOException e) {
             System.out.println("Error reading response: " + e.getMessage());
         }
@@ -362,82 +348,84 @@ public class Client {
      * Views the list of challenges by sending a request to the server and displaying the responses.
      *
      * @param  scanner         the scanner object for user input
-     * @param  writer          the print writer object for sending messages to the server
-     * @param  reader          the buffered reader object for receiving messages from the server
-     * @throws IOException     if there is an error reading the server response
+     * @param  server          the connection to the server
      */
-    private static void viewChallenges(Scanner scanner, PrintWriter writer, BufferedReader reader) {
-        writer.println("viewChallenges");
-        writer.flush();
-    
+    private static void viewChallenges(Scanner scanner, ProtocolClient server) {
         try {
-            String response;
-            
-            while ((response = reader.readLine()) != null) {
-                if (response.equals("END_OF_CHALLENGES")) {
-                    break;
-                }
-                System.out.println(response); // Print the response from the server
-            }
-            
-            // Process end-of-challenges and return to participant menu
+            server.request("viewChallenges").print();
+
+            // Return to participant menu
             displayParticipantMenu();
-            handleParticipantOptions(scanner, writer, reader);
+            handleParticipantOptions(scanner, server);
             
         } catch (IOException e) {
             System.out.println("Error reading response: " + e.getMessage());
         }
     }
     
+    /**
+     * Shows the best participants at a challenge and where the given participant stands.
+     *
+     * @param  scanner   the scanner object for reading user input
+     * @param  server    the connection to the server
+     */
+    private static void viewLeaderboard(Scanner scanner, ProtocolClient server) {
+        try {
+            System.out.print("Challenge Number: ");
+            String challengeNumber = scanner.nextLine();
+            System.out.print("Participant Username (leave empty to skip): ");
+            String participantUsername = scanner.nextLine().trim();
+
+            server.request("leaderboard", challengeNumber, participantUsername.isEmpty() ? "-" : participantUsername).print();
+
+            // Return to participant menu
+            displayParticipantMenu();
+            handleParticipantOptions(scanner, server);
+        } catch (IOException e) {
+            System.out.println("Error reading response: " + e.getMessage());
+        }
+    }
+
     /**
      * Confirms or rejects an applicant based on user input and server responses.
      *
      * @param  scanner   the scanner object for reading user input
-     * @param  writer    the print writer object for sending commands to the server
-     * @param  reader    the buffered reader object for reading server responses
-     * @throws IOException     if there is an error reading the server response
+     * @param  server    the connection to the server
      */
-    private static void confirmApplicant(Scanner scanner, PrintWriter writer, BufferedReader reader) {
+    private static void confirmApplicant(Scanner scanner, ProtocolClient server) {
         System.out.print("Username: ");
         String username = scanner.nextLine();
         System.out.print("Confirm (yes/no): ");
         String confirm = scanner.nextLine();
 
-
-        if (confirm.equalsIgnoreCase("yes")) {
-            writer.println("confirm yes " + username);
-        } else if (confirm.equalsIgnoreCase("no")) {
-            System.out.print("Reason for rejection: ");
-            String reason = scanner.nextLine();
-            writer.println("confirm no " + username + " " + reason);
-        } else {
-            System.out.println("Invalid confirmation command.");
-        }
-
         try {
-            String response;
-            while ((response = reader.readLine()) != null && !response.isEmpty()) {
-                System.out.println(response);
-                if (response.contains("Participant confirmed successfully!") || response.contains("Participant rejected successfully")) {
-                    displaySchoolRepMenu();
-                    handleSchoolRepOptions(scanner, writer, reader);
-                    return;
-                }
+            ProtocolClient.Reply reply;
+            if (confirm.equalsIgnoreCase("yes")) {
+                reply = server.request("confirm", "yes", username);
+            } else if (confirm.equalsIgnoreCase("no")) {
+                System.out.print("Reason for rejection: ");
+                String reason = scanner.nextLine();
+                reply = server.request("confirm", "no", username, reason);
+            } else {
+                System.out.println("Invalid confirmation command.");
+                return;
             }
+            reply.print();
+            displaySchoolRepMenu();
+            handleSchoolRepOptions(scanner, server);
         } catch (IOException e) {
             System.out.println("Error during confirmation: " + e.getMessage());
         }
     }
 
      /**
-     * Enables a participant to attempt a challenge.
+     * Enables a participant to attempt a challenge. Each question ends with a prompt from
+     * the server, which is answered until the attempt has finished.
      *
      * @param  scanner   the scanner object for reading user input
-     * @param  writer    the print writer object for sending commands to the server
-     * @param  reader    the buffered reader object for reading server responses
-     * @throws IOException     if there is an error reading the server response
+     * @param  server    the connection to the server
      */   
-    private static void attemptChallenge(Scanner scanner, PrintWriter writer, BufferedReader reader) {
+    private static void attemptChallenge(Scanner scanner, ProtocolClient server) {
         try {
             // Ask for participant username
             System.out.print("Participant Username: ");
@@ -448,47 +436,34 @@ public class Client {
             String challengeNumber = scanner.nextLine();
 
             // Send command and parameters to the server
-            writer.println("attemptChallenge " + participantUsername + " " + challengeNumber);
-
-            String serverResponse;
-            while ((serverResponse = reader.readLine()) != null) {
-                System.out.println(serverResponse);// Read server's response for question text
-                if (serverResponse.startsWith("Question: ")) {
-                    // Display question text
-                    System.out.println(serverResponse);
-                    // Ask for participant's answer
-                    System.out.print("Your answer: ");
-                    String answer = scanner.nextLine();
-                    // Send answer to the server
-                    writer.println(answer);
-                } else if (serverResponse.equals("Max Attempts Reached!")) {
-                    System.out.println("You have already attempted this challenge three times already.");
-                    break;
-                } else if (serverResponse.equals("Invalid participant username.")) {
-                    break;
-                } else if (serverResponse.contains("Challenge completed.")) {
-                    break;
-                }else if(serverResponse.contains("Invalid command")){
-                    System.out.println(" ");
-                    break;
-                }
+            ProtocolClient.Reply reply = server.request("attemptChallenge", participantUsername, challengeNumber);
+            reply.print();
+            while (reply.awaitingInput()) {
+                // Ask for participant's answer
+                System.out.print(reply.text);
+                String answer = scanner.nextLine();
+                // Send answer to the server
+                reply = server.input(answer);
+                reply.print();
+            }
+            if (reply.lines.contains("Max Attempts Reached!")) {
+                System.out.println("You have already attempted this challenge three times already.");
             }
             displayParticipantMenu();
-            handleParticipantOptions(scanner, writer, reader);
+            handleParticipantOptions(scanner, server);
         } catch (IOException e) {
             System.out.println("Error during challenge attempt: " + e.getMessage());
         }
     }
 
     /**
-     * Handles the main menu options based on the user's input. Allows the user to register as an applicant, login as a participant, login as a school representative, or exit the program. Reads and displays server responses for each option.
+     * Handles the main menu options based on the user's input. Allows the user to register as an applicant, login as a participant, login as a school representative, or exit the program.
      *
      * @param  scanner   the scanner object for reading user input
-     * @param  writer    the print writer object for sending commands to the server
-     * @param  reader    the buffered reader object for reading server responses
+     * @param  server    the connection to the server
      * @throws IOException     if there is an error reading the server response
      */
-    private static void handleMainMenuOptions(Scanner scanner, PrintWriter writer, BufferedReader reader) throws IOException {
+    private static void handleMainMenuOptions(Scanner scanner, ProtocolClient server) throws IOException {
         String text;
 
             do {
@@ -499,31 +474,23 @@ public class Client {
 
                 switch (text) {
                     case "1":
-                        registerApplicant(scanner, writer,reader);
+                        registerApplicant(scanner, server);
                         break;
                     case "2":
-                        loginParticipant(scanner, writer, reader);
+                        loginParticipant(scanner, server);
                         break;
                     case "3":
-                        loginSchoolRepresentative(scanner, writer, reader);
+                        loginSchoolRepresentative(scanner, server);
                         break;
                     case "4":
-                        writer.println("Bye!");
+                        server.close();
+                        System.exit(0);
                         break;
                     default:
                         System.out.println("Invalid option");
                         continue;
                 }
 
-                // Read and display server responses
-                String response;
-                while ((response = reader.readLine()) != null && !response.isEmpty()) {
-                    // System.out.println(response);
-                    if (response.equals("Invalid command")) {
-                        System.exit(0);
-                    }
-                }
-
             } while (!text.equals("4")); 
     }
 
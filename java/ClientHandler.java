@@ -0,0 +1,1384 @@
+import java.io.*;
+import java.net.*;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.sql.DataSource;
+
+class ClientHandler implements Runnable {
+    private static final int MAX_ATTEMPTS = 3;
+
+    // Queries run on every login, registration or attempt; MigrationRunner checks their plans
+    static final String PARTICIPANT_LOGIN_QUERY = "SELECT * FROM participants WHERE username = ? AND password = ?";
+    static final String REPRESENTATIVE_LOGIN_QUERY = "SELECT * FROM school_representatives WHERE username = ? AND password = ?";
+    static final String PARTICIPANT_ID_QUERY = "SELECT id FROM participants WHERE username = ?";
+    static final String PARTICIPANT_EMAIL_QUERY = "SELECT email FROM participants WHERE username = ?";
+    static final String APPLICANT_EMAIL_QUERY = "SELECT email FROM applicants WHERE username = ?";
+    static final String REPRESENTATIVE_EMAIL_BY_USERNAME_QUERY = "SELECT email FROM school_representatives WHERE username = ?";
+    static final String REPRESENTATIVE_EMAIL_QUERY = "SELECT representative_email FROM schools WHERE school_registration_number = ?";
+    static final String REJECTED_APPLICANT_QUERY = "SELECT * FROM rejected_applicants WHERE username = ?";
+    static final String CREATE_ATTEMPT_COUNTER_QUERY = "INSERT IGNORE INTO participant_challenge_attempts (participant_id, challenge_id, attempts_used) VALUES (?, ?, 0)";
+    static final String CLAIM_ATTEMPT_QUERY = "UPDATE participant_challenge_attempts SET attempts_used = attempts_used + 1, " +
+                                              "last_attempt_number = last_attempt_number + 1 " +
+                                              "WHERE participant_id = ? AND challenge_id = ? AND attempts_used < ?";
+    static final String LAST_ATTEMPT_NUMBER_QUERY = "SELECT last_attempt_number FROM participant_challenge_attempts WHERE participant_id = ? AND challenge_id = ?";
+    static final String APPLICANTS_PAGE_QUERY = "SELECT a.username, a.school_registration_number FROM applicants a " +
+                                                "JOIN schools s ON s.school_registration_number = a.school_registration_number " +
+                                                "WHERE s.representative_name = ? AND a.username > ? ORDER BY a.username LIMIT ?";
+    private static final int DEFAULT_APPLICANT_PAGE_SIZE = 50;
+    private static final int MAX_APPLICANT_PAGE_SIZE = 500;
+    private static final int DEFAULT_LEADERBOARD_SIZE = 10;
+    private static final int MAX_LEADERBOARD_SIZE = 100;
+    // Sent in place of an image path when the client streams the image after the command
+    private static final String STREAMED_IMAGE = "-";
+    // Read-only commands that a pipelining client may have run concurrently
+    private static final Set<String> CONCURRENT_COMMANDS = Set.of("viewChallenges", "viewApplicants", "leaderboard");
+
+    private final Socket socket;
+    private final DataSource dataSource;
+    private final MailOutbox outbox = Server.getMailOutbox();
+    private final ConfirmationDigest confirmationDigest = Server.getConfirmationDigest();
+    private final ReportPipeline reportPipeline = Server.getReportPipeline();
+    private final QuestionBank questionBank = Server.getQuestionBank();
+    private final ChallengeListCache challengeList = Server.getChallengeList();
+    private final AttemptWriter attemptWriter = Server.getAttemptWriter();
+    private final ApplicantJournal applicantJournal = Server.getApplicantJournal();
+    private final BlobStore blobStore = Server.getBlobStore();
+    private final Metrics metrics = Server.getMetrics();
+    private final Leaderboard leaderboard = Server.getLeaderboard();
+    private final long maxImageBytes = Server.getInt("APPLICANT_IMAGE_MAX_BYTES", 5 * 1024 * 1024);
+
+    // The school representative logged in on this connection, if any
+    private volatile String representativeUsername;
+
+    // The command waiting for further input from the client, if any
+    private volatile LineHandler pending;
+    // The name of that command, to time its inputs under
+    private volatile String pendingCommand;
+    private final AtomicBoolean open = new AtomicBoolean();
+
+    /**
+     * Receives the next line sent by the client while a command is waiting for input.
+     */
+    interface LineHandler {
+        void onLine(String line, PrintWriter writer);
+    }
+
+    /**
+     * An action run once all the lines it waits for have been received.
+     */
+    interface LineAction {
+        void run(String[] lines, PrintWriter writer);
+    }
+
+    /**
+     * Returns the socket this handler serves.
+     *
+     * @return          the client socket
+     */
+    Socket getSocket() {
+        return socket;
+    }
+
+    /**
+     * Creates a handler whose lines are fed by a different front end, such as the NIO acceptor.
+     *
+     * @param  dataSource   the pool to borrow database connections from
+     */
+    public ClientHandler(DataSource dataSource) {
+        this(null, dataSource);
+    }
+
+    public ClientHandler(Socket socket, DataSource dataSource) {
+        this.socket = socket;
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * A method that runs the server operations, handling incoming requests. A connection that
+     * starts with the protocol handshake is served with frames, any other with text lines.
+     *
+     */
+    public void run() {
+        sessionOpened();
+        try {
+            InputStream input = new BufferedInputStream(socket.getInputStream());
+            OutputStream output = socket.getOutputStream();
+            input.mark(1);
+            int first = input.read();
+            input.reset();
+            if (first == 0x00) {
+                serveFramed(input, output);
+                return;
+            }
+            BufferedReader reader = new BufferedReader(new InputStreamReader(input));
+            PrintWriter writer = new PrintWriter(output, true);
+
+            String request;
+
+            while ((request = reader.readLine()) != null) {
+                handleLine(request, writer);
+            }
+        } catch (IOException ex) {
+            System.out.println("Server exception:" + ex.getMessage());
+            ex.printStackTrace();
+        } finally {
+            sessionClosed();
+            try {
+                socket.close();
+            } catch (IOException ex) {
+                System.out.println("Error closing socket: " + ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Serves a connection that speaks the framed protocol, one frame at a time.
+     *
+     * @param  input    the connection's input, positioned at the handshake
+     * @param  output   the connection's output
+     * @throws IOException if the connection fails or sends a malformed frame
+     */
+    private void serveFramed(InputStream input, OutputStream output) throws IOException {
+        int version = Protocol.acceptHandshake(input, output);
+        if (version == 0) {
+            return;
+        }
+        Protocol.FrameReader frames = new Protocol.FrameReader(input, version);
+        Protocol.Frame frame;
+        if (version < Protocol.TAGGED_VERSION) {
+            Protocol.FrameWriter writer = new Protocol.FrameWriter(new BufferedOutputStream(output), Protocol.UNTAGGED);
+            while ((frame = frames.next()) != null) {
+                handleFrame(frame, writer);
+            }
+            return;
+        }
+        RequestScheduler scheduler = RequestScheduler.fromConfig(this, Server.getRequestWorkers(), answer -> {
+            synchronized (output) {
+                try {
+                    output.write(answer);
+                    output.flush();
+                } catch (IOException e) {
+                    System.out.println("Error writing response: " + e.getMessage());
+                }
+            }
+        });
+        try {
+            while ((frame = frames.next()) != null) {
+                scheduler.submit(frame);
+            }
+        } finally {
+            scheduler.awaitIdle();
+        }
+    }
+
+    /**
+     * Tells whether a frame is a read-only command that may run concurrently with others.
+     *
+     * @param  frame    the frame received from the client
+     * @return          true for a REQUEST of one of the CONCURRENT_COMMANDS
+     */
+    boolean isConcurrent(Protocol.Frame frame) {
+        return frame.type == Protocol.REQUEST && frame.fields.length > 0 && CONCURRENT_COMMANDS.contains(frame.fields[0]);
+    }
+
+    /**
+     * Counts the session's connection as open. Called once a connection is accepted.
+     */
+    void sessionOpened() {
+        if (open.compareAndSet(false, true)) {
+            metrics.connectionOpened();
+        }
+    }
+
+    /**
+     * Hands over the work of a session whose connection has gone, such as the answers of an
+     * unfinished challenge attempt.
+     */
+    void sessionClosed() {
+        if (open.compareAndSet(true, false)) {
+            metrics.connectionClosed();
+        }
+        LineHandler current = pending;
+        pending = null;
+        if (current instanceof AttemptSession) {
+            ((AttemptSession) current).submitAnswers();
+            ((AttemptSession) current).finish();
+        } else if (current instanceof ImageUpload) {
+            ((ImageUpload) current).discard();
+        }
+    }
+
+    /**
+     * Handles one line received from the client. The line either answers a prompt of the
+     * command in progress (login credentials, challenge answers) or starts a new command.
+     * Nothing here blocks on the socket, so any thread may feed the next line of a session.
+     *
+     * @param  line     the line received from the client
+     * @param  writer   the PrintWriter for writing responses
+     */
+    void handleLine(String line, PrintWriter writer) {
+        LineHandler next = pending;
+        if (next != null) {
+            pending = null;
+            answerPending(next, line, writer);
+        } else {
+            System.out.println("Received from client: " + line);
+            handleRequest(line, writer);
+        }
+        writer.flush();
+    }
+
+    /**
+     * Handles one frame received from a framed connection. A REQUEST starts a command with
+     * the fields as its arguments, an INPUT answers the prompt of the command in progress.
+     * Either way the answer ends with exactly one PROMPT, RESPONSE or ERROR frame. A concurrent
+     * command neither looks at nor changes the command waiting for input.
+     *
+     * @param  frame    the frame received from the client
+     * @param  writer   the writer framing the responses
+     */
+    void handleFrame(Protocol.Frame frame, Protocol.FrameWriter writer) {
+        boolean concurrent = isConcurrent(frame);
+        try {
+            if (frame.type == Protocol.REQUEST && frame.fields.length > 0) {
+                if (pending != null && !concurrent) {
+                    writer.error("A command is waiting for input");
+                    return;
+                }
+                System.out.println("Received from client: " + String.join(" ", frame.fields));
+                handleRequest(frame.fields, writer);
+            } else if (frame.type == Protocol.INPUT) {
+                LineHandler next = pending;
+                if (next == null) {
+                    writer.error("No command is waiting for input");
+                    return;
+                }
+                pending = null;
+                answerPending(next, frame.text(), writer);
+            } else {
+                writer.error("Unexpected frame type " + frame.type);
+                return;
+            }
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            writer.error("Error handling request: " + e.getMessage());
+            return;
+        }
+        writer.finish(!concurrent && pending != null);
+    }
+
+    /**
+     * Passes a line to the command waiting for it, timing it as an input of that command.
+     *
+     * @param  next     the command waiting for input
+     * @param  line     the line received from the client
+     * @param  writer   the PrintWriter for writing responses
+     */
+    private void answerPending(LineHandler next, String line, PrintWriter writer) {
+        long started = System.nanoTime();
+        String command = pendingCommand;
+        try {
+            next.onLine(line, writer);
+        } finally {
+            metrics.recordInput(command != null ? command : "unknown", System.nanoTime() - started);
+        }
+    }
+
+    /**
+     * Waits for the given number of further lines from the client before running an action.
+     *
+     * @param  count    the number of lines to collect
+     * @param  action   the action receiving the collected lines
+     */
+    private void awaitLines(int count, LineAction action) {
+        String[] lines = new String[count];
+        pending = new LineHandler() {
+            private int received;
+
+            public void onLine(String line, PrintWriter writer) {
+                lines[received++] = line;
+                if (received < count) {
+                    pending = this;
+                } else {
+                    action.run(lines, writer);
+                }
+            }
+        };
+    }
+
+    /**
+     * Handles a text request, splitting it into the command and its arguments at spaces.
+     *
+     * @param  request  the request input
+     * @param  writer   the PrintWriter for writing responses
+     */
+    private void handleRequest(String request, PrintWriter writer){
+        handleRequest(request.split(" "), writer);
+    }
+
+    /**
+     * Handles a request that has already been split into the command and its arguments.
+     *
+     * @param  parts    the command followed by its arguments
+     * @param  writer   the PrintWriter for writing responses
+     */
+    private void handleRequest(String[] parts, PrintWriter writer) {
+        long started = System.nanoTime();
+        LineHandler before = pending;
+        String command = parts[0];
+        String timedAs = command;
+
+        try {
+            switch (command) {
+                case "register":
+                    registerApplicant(parts, writer);
+                    break;
+                case "registerSchool":
+                    registerSchool(parts, writer);
+                    break;
+                case "viewChallenges":
+                    viewChallenges(writer);
+                    break;
+                case "confirm":
+                    confirmApplicant(parts, writer);
+                    break;
+                case "attemptChallenge":
+                    attemptChallenge(writer, String.valueOf(parts[1]), Integer.parseInt(parts[2]));
+                    break;
+                case "viewApplicants":
+                    viewApplicants(parts, writer);
+                    break;
+                case "refreshChallenges":
+                    refreshChallenges(parts, writer);
+                    break;
+                case "metrics":
+                    showMetrics(writer);
+                    break;
+                case "slowQueries":
+                    showSlowQueries(writer);
+                    break;
+                case "leaderboard":
+                    viewLeaderboard(parts, writer);
+                    break;
+                case "login":
+                    if ("school_representative".equals(parts[1])) {
+                        awaitLines(2, (lines, w) -> loginSchoolRepresentative(lines[0], lines[1].trim(), w));
+                    } else if ("participant".equals(parts[1])) {
+                        awaitLines(2, (lines, w) -> loginParticipant(lines[0], lines[1].trim(), w));
+                    }
+                    break;
+                default:
+                    timedAs = "unknown";
+                    writer.println("Invalid command");
+                    break;
+            }
+        } finally {
+            metrics.recordRequest(timedAs, System.nanoTime() - started);
+            if (pending != null && pending != before) {
+                pendingCommand = timedAs;
+            }
+        }
+    }
+
+    /**
+     * Registers an applicant in the system. The image is either a path on the server or, when
+     * the path is "-", streamed by the client in the lines following the command.
+     *
+     * @param  parts   an array of strings containing the applicant's information
+     * @param  writer  a PrintWriter object for writing the response
+     * @return          void
+     */
+    private void registerApplicant(String[] parts, PrintWriter writer) {
+        String imagePath = parts[8];
+        if (STREAMED_IMAGE.equals(imagePath)) {
+            pending = new ImageUpload(parts);
+            return;
+        }
+        File imageFile = new File(imagePath);
+        if (imageFile.length() > maxImageBytes) {
+            writer.println("Error registering applicant: image is larger than " + maxImageBytes + " bytes");
+            return;
+        }
+        storeApplicant(parts, imageFile, writer);
+    }
+
+    /**
+     * Stores an applicant. The image goes into the blob store and the row keeps its hash.
+     *
+     * @param  parts       an array of strings containing the applicant's information
+     * @param  imageFile   the file holding the applicant's image
+     * @param  writer      a PrintWriter object for writing the response
+     */
+    private void storeApplicant(String[] parts, File imageFile, PrintWriter writer) {
+        String username = parts[1];
+        String firstName = parts[2];
+        String lastName = parts[3];
+        String schoolRegNumber = parts[4];
+        String email = parts[5];
+        String dob = parts[6];
+        String password = parts[7];
+
+        try (Connection connection = dataSource.getConnection()) {
+            // Check if the applicant is in the rejected_applicants table
+            try (PreparedStatement checkStatement = connection.prepareStatement(REJECTED_APPLICANT_QUERY)) {
+                checkStatement.setString(1, username);
+                ResultSet checkResult = checkStatement.executeQuery();
+
+                if (checkResult.next()) {
+                    writer.println("Registration failed. This applicant has been rejected previously.");
+                    return; 
+                }
+            }
+            // An image left behind by a failed insert is harmless: it is only an unreferenced file
+            String imageHash;
+            try (InputStream image = new FileInputStream(imageFile)) {
+                imageHash = blobStore.put(image);
+            }
+
+            // The applicant row and the notification to the representative commit together
+            connection.setAutoCommit(false);
+            String query = "INSERT INTO applicants (username, firstname, lastname, school_registration_number, email, date_of_birth,password,image_hash) VALUES (?, ?, ?, ?, ?, ?,?,?)";
+            int rowsInserted;
+            try (PreparedStatement statement = connection.prepareStatement(query)) {
+                statement.setString(1, username);
+                statement.setString(2, firstName);
+                statement.setString(3, lastName);
+                statement.setString(4, schoolRegNumber);
+                statement.setString(5, email);
+                statement.setDate(6, Date.valueOf(dob));
+                statement.setString(7, password);
+                statement.setString(8, imageHash);
+
+                rowsInserted = statement.executeUpdate();
+            }
+            if (rowsInserted > 0) {
+                // Get the representative email for the school; an unknown school fails the registration
+                String representativeEmail = getRepresentativeEmailBySchoolRegNumber(connection, schoolRegNumber);
+                // Queue the notice for the representative's next digest
+                confirmationDigest.add(connection, representativeEmail, username);
+                connection.commit();
+                outbox.wakeUp();
+
+                writer.println("Applicant registered successfully!");
+                logToTextFile(String.join(" ", username,firstName,lastName,schoolRegNumber,email,dob));
+            }
+
+        } catch (SQLException | IOException e) {
+            e.printStackTrace();
+            writer.println("Error registering applicant: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Retrieves the representative email associated with a school registration number.
+     *
+     * @param  connection        the database connection to use
+     * @param  schoolRegNumber   the registration number of the school
+     * @return                   the representative email associated with the school
+     * @throws SQLException     if the query fails or no school has the registration number
+     */
+    private String getRepresentativeEmailBySchoolRegNumber(Connection connection, String schoolRegNumber) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement(REPRESENTATIVE_EMAIL_QUERY)) {
+            stmt.setString(1, schoolRegNumber);
+            ResultSet rs = stmt.executeQuery();
+            if (rs.next()) {
+                return rs.getString("representative_email");
+            } else {
+                throw new SQLException("No representative email found for school registration number: " + schoolRegNumber);
+            }
+        }
+    }
+    
+    /**
+     * Sends one page of the applicants to the schools of the logged-in representative, in username
+     * order. Pages are fetched by keyset: the client passes the last username it received, so every
+     * page is an index range read however many applicants there are. A full page ends with a
+     * "Next Cursor:" line giving the username to continue after.
+     *
+     * @param  parts     the command, an optional cursor ("-" for the first page) and an optional page size
+     * @param  writer    the PrintWriter object to write the applicant details to
+     */
+    private void viewApplicants(String[] parts, PrintWriter writer) {
+        String representative = representativeUsername;
+        if (representative == null) {
+            writer.println("Please log in as a school representative first.");
+            writer.println("END_OF_RESPONSE");
+            writer.flush();
+            return;
+        }
+        String cursor = parts.length > 1 && !parts[1].equals("-") ? parts[1] : "";
+        int pageSize = DEFAULT_APPLICANT_PAGE_SIZE;
+        if (parts.length > 2) {
+            pageSize = Math.max(1, Math.min(MAX_APPLICANT_PAGE_SIZE, Integer.parseInt(parts[2])));
+        }
+
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(APPLICANTS_PAGE_QUERY)) {
+            statement.setString(1, representative);
+            statement.setString(2, cursor);
+            statement.setInt(3, pageSize);
+            // Stream the rows instead of buffering the whole result in the driver
+            statement.setFetchSize(Integer.MIN_VALUE);
+            ResultSet resultSet = statement.executeQuery();
+
+            // display applicants
+            writer.println("\n:: Applicant Details ::");
+            int rows = 0;
+            String lastUsername = null;
+            while (resultSet.next()) {
+                String username = resultSet.getString("username");
+                String schoolRegNumber = resultSet.getString("school_registration_number");
+
+                writer.println("Username: " + username);
+                writer.println("School Registration Number: " + schoolRegNumber);
+                writer.println();
+                lastUsername = username;
+                rows++;
+            }
+            if (rows == pageSize) {
+                writer.println("Next Cursor: " + lastUsername);
+            }
+            writer.println("END_OF_RESPONSE"); // End of response signal
+            writer.flush();
+        } catch (SQLException e) {
+            e.printStackTrace();
+            writer.println("Error viewing applicants: " + e.getMessage());
+            writer.println("END_OF_RESPONSE");
+            writer.flush();
+        }
+    }
+    
+    /**
+     * A method to log in a participant with the credentials sent by the client.
+     *
+     * @param  username the participant's username
+     * @param  password the participant's password
+     * @param  writer   the PrintWriter object used to write output
+     * @return          true if the login is successful, false otherwise
+     */
+    private boolean loginParticipant(String username, String password, PrintWriter writer) {
+        try (Connection connection = dataSource.getConnection()) {
+            try (PreparedStatement statement = connection.prepareStatement(PARTICIPANT_LOGIN_QUERY)) {
+                statement.setString(1, username);
+                statement.setString(2, password);
+                ResultSet resultSet = statement.executeQuery();
+                if (resultSet.next()) {
+                    writer.println("Login successful!");
+                    writer.flush();
+                    return true;
+                } else {
+                    writer.println("Invalid username or password");
+                    writer.flush();
+                    return false;
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            writer.println("Error during login: " + e.getMessage());
+            writer.flush();
+            return false;
+        }
+    }
+
+    /**
+     * Logs in a school representative with the credentials sent by the client.
+     *
+     * @param  username the representative's username
+     * @param  password the representative's password
+     * @param  writer   the PrintWriter object used to write output
+     * @return          true if the login is successful, false otherwise
+     */
+    private boolean loginSchoolRepresentative(String username, String password, PrintWriter writer) {
+        try (Connection connection = dataSource.getConnection()) {
+            try (PreparedStatement statement = connection.prepareStatement(REPRESENTATIVE_LOGIN_QUERY)) {
+                statement.setString(1, username);
+                statement.setString(2, password);
+                ResultSet resultSet = statement.executeQuery();
+                if (resultSet.next()) {
+                    representativeUsername = username;
+                    writer.println("Login successful!");
+                    writer.flush();
+                    return true;
+                } else {
+                    writer.println("Invalid username or password");
+                    writer.flush();
+                    return false;
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            writer.println("Error during login: " + e.getMessage());
+            writer.flush();
+            return false;
+        }
+    }
+
+    /**
+     * Drops cached challenge data after the catalog was edited, so the next attempt reads it afresh.
+     * Without an ID every cache built from the catalog is refreshed. Only a logged-in school
+     * representative may do this; the CatalogWatcher refreshes the caches on its own anyway.
+     *
+     * @param  parts    the command and an optional challenge ID
+     * @param  writer   the writer to write output to the user
+     */
+    private void refreshChallenges(String[] parts, PrintWriter writer) {
+        if (representativeUsername == null) {
+            writer.println("Please log in as a school representative first.");
+            return;
+        }
+        if (parts.length > 1) {
+            questionBank.invalidate(Integer.parseInt(parts[1]));
+            challengeList.refresh();
+        } else {
+            Server.getCatalogWatcher().changed();
+        }
+        writer.println("Challenges refreshed (" + questionBank.describe() + "; list " + challengeList.describe() + ")");
+    }
+
+    /**
+     * Sends the server's metrics, in the same text as the metrics endpoint, to a logged-in
+     * school representative.
+     *
+     * @param  writer   the writer to write output to the user
+     */
+    private void showMetrics(PrintWriter writer) {
+        if (representativeUsername == null) {
+            writer.println("Please log in as a school representative first.");
+        } else {
+            writer.print(metrics.render());
+        }
+        writer.println("END_OF_RESPONSE");
+        writer.flush();
+    }
+
+    /**
+     * Sends the most expensive queries by total execution time, with the method that ran them,
+     * to a logged-in school representative.
+     *
+     * @param  writer   the writer to write output to the user
+     */
+    private void showSlowQueries(PrintWriter writer) {
+        if (representativeUsername == null) {
+            writer.println("Please log in as a school representative first.");
+        } else {
+            QueryTracer tracer = Server.getQueryTracer();
+            writer.println("Slow queries (" + tracer.describe() + ")");
+            for (String query : tracer.top()) {
+                writer.println(query);
+            }
+        }
+        writer.println("END_OF_RESPONSE");
+        writer.flush();
+    }
+
+    /**
+     * Sends the best participants at a challenge and, when a username is given, that
+     * participant's own place.
+     *
+     * @param  parts    the command, the challenge ID, an optional username ("-" for none) and an optional count
+     * @param  writer   the writer to write output to the user
+     */
+    private void viewLeaderboard(String[] parts, PrintWriter writer) {
+        int challengeId = Integer.parseInt(parts[1]);
+        String username = parts.length > 2 && !parts[2].equals("-") ? parts[2] : null;
+        int count = DEFAULT_LEADERBOARD_SIZE;
+        if (parts.length > 3) {
+            count = Math.max(1, Math.min(MAX_LEADERBOARD_SIZE, Integer.parseInt(parts[3])));
+        }
+
+        writer.println("\n:: Leaderboard for Challenge " + challengeId + " ::");
+        int rank = 0;
+        for (Leaderboard.Standing standing : leaderboard.top(challengeId, count)) {
+            writer.println(++rank + ". " + standing.username + " - Score: " + standing.score + ", Time: " + standing.timeMillis / 1000 + " seconds");
+        }
+        if (rank == 0) {
+            writer.println("No completed attempts yet.");
+        }
+        if (username != null) {
+            Leaderboard.Standing standing = leaderboard.standing(challengeId, username);
+            if (standing == null) {
+                writer.println(username + " has not completed this challenge.");
+            } else {
+                writer.println(username + " is ranked " + leaderboard.rank(challengeId, username) + " of " + leaderboard.size(challengeId) +
+                        " with a score of " + standing.score);
+            }
+        }
+        writer.println("END_OF_RESPONSE");
+        writer.flush();
+    }
+
+    /**
+     * Method to view challenges and display challenge details.
+     *
+     * @param  writer   PrintWriter to write challenge details
+     */
+    private void viewChallenges(PrintWriter writer) {
+        try {
+            // The listing is rendered ahead of time and already ends with END_OF_CHALLENGES
+            writer.print(challengeList.render());
+            writer.flush();
+        } catch (SQLException e) {
+            e.printStackTrace();
+            writer.println("Error viewing challenges: " + e.getMessage());
+            writer.flush();
+        }
+    }
+    
+    /**
+     * Confirm or reject an applicant and sending an email immediately.
+     *
+     * @param  parts   array containing username, and reason
+     * @param  writer  PrintWriter object to write confirmation/rejection messages
+     */
+    private void confirmApplicant(String[] parts, PrintWriter writer) {
+        String confirm = parts[1];
+        String username = parts[2];
+        String reason = String.join(" ", Arrays.copyOfRange(parts, 3, parts.length));
+    
+        try (Connection connection = dataSource.getConnection()) {
+            // The move between tables and the notifications about it commit together
+            connection.setAutoCommit(false);
+            if (confirm.equalsIgnoreCase("yes")) {
+                logToTextFile(String.join(" ", username));    
+                // Move applicant to participants table
+                // Only the image hash is copied; the BLOB is carried over only for applicants registered before the blob store
+                String moveToParticipantsQuery = "INSERT INTO participants (username,firstname,lastname,school_registration_number,email,date_of_birth,password,image,image_hash) SELECT username, firstname, lastname, school_registration_number, email, date_of_birth,password,CASE WHEN image_hash IS NULL THEN image END,image_hash FROM applicants WHERE username = ?";
+                int rowsInserted;
+                try (PreparedStatement moveToParticipantsStmt = connection.prepareStatement(moveToParticipantsQuery)) {
+                    moveToParticipantsStmt.setString(1, username);
+                    rowsInserted = moveToParticipantsStmt.executeUpdate();
+                }
+                if (rowsInserted > 0) {
+                    removeFromApplicantsTable(connection, username);    
+                    sendEmailNotification(connection, getEmailForParticipant(connection, username), "Confirmation", "You have been confirmed as a participant.");
+                    // Send email notification to school representative
+                    sendEmailNotification(connection, getEmailForRep(connection, username), "Confirmation", "You have confirmed the applicant: " + username);
+                    connection.commit();
+                    outbox.wakeUp();
+                    writer.println("Participant confirmed successfully!");    
+                    removeFromFile(username);
+                } else {
+                    writer.println("Error: No matching applicant found to confirm.");
+                }    
+            } else if (confirm.equalsIgnoreCase("no")) {
+                logToTextFile("confirm no " + username + " " + reason);
+                sendEmailNotification(connection, getEmailForApplicant(connection, username), "Rejection", "Your application has been rejected. Reason: " + reason); 
+                // Move applicant to rejected_applicants table
+                String moveToRejectedQuery = "INSERT INTO rejected_applicants (username, reason) SELECT username, ? FROM applicants WHERE username = ?";
+                int rowsInserted;
+                try (PreparedStatement moveToRejectedStmt = connection.prepareStatement(moveToRejectedQuery)) {
+                    moveToRejectedStmt.setString(1, reason);
+                    moveToRejectedStmt.setString(2, username);
+                    rowsInserted = moveToRejectedStmt.executeUpdate();
+                }
+                if (rowsInserted > 0) {
+                    // Remove from applicants table
+                    removeFromApplicantsTable(connection, username);    
+                    connection.commit();
+                    outbox.wakeUp();
+                    writer.println("Participant rejected successfully with reason: " + reason);   
+                    // Remove from file
+                    removeFromFile(username);                    
+                } else {
+                    writer.println("Error: No matching applicant found to reject.");
+                }    
+            } else {
+                writer.println("Invalid confirmation command.");
+            }    
+        } catch (SQLException | IOException e) {
+            e.printStackTrace();
+            writer.println("Error confirming participant: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Retrieves the email associated with the representative username from the school_representatives table.
+     *
+     * @param  connection the database connection to use
+     * @param  username   the username of the representative
+     * @return            the email address associated with the representative
+     * @throws SQLException if an error occurs while executing the SQL query
+     */
+    private String getEmailForRep(Connection connection, String username) throws SQLException{
+        try (PreparedStatement statement = connection.prepareStatement(REPRESENTATIVE_EMAIL_BY_USERNAME_QUERY)) {
+            statement.setString(1, username);
+            ResultSet resultSet = statement.executeQuery();
+            if (resultSet.next()) {
+                return resultSet.getString("email");
+            }
+        }
+        return "not found";
+    }
+
+    /**
+     * Retrieves the email associated with the participant username from the participants table.
+     *
+     * @param  connection the database connection to use
+     * @param  username   the username of the participant
+     * @return            the email address associated with the participant, or "not found" if not found
+     */
+    private String getEmailForParticipant(Connection connection, String username) throws SQLException{
+        try (PreparedStatement statement = connection.prepareStatement(PARTICIPANT_EMAIL_QUERY)) {
+            statement.setString(1, username);
+            ResultSet resultSet = statement.executeQuery();
+            if (resultSet.next()) {
+                return resultSet.getString("email");
+            }
+        }
+        return "not found";
+    }
+
+    private String getEmailForApplicant(Connection connection, String username) throws SQLException{
+        try (PreparedStatement statement = connection.prepareStatement(APPLICANT_EMAIL_QUERY)) {
+            statement.setString(1, username);
+            ResultSet resultSet = statement.executeQuery();
+            if (resultSet.next()) {
+                return resultSet.getString("email");
+            }
+        }
+        return "not found";
+    }
+
+    /**
+     * Queues an email notification to a recipient with the provided details. The message is
+     * stored in the outbox with the caller's connection and sent once that transaction commits.
+     *
+     * @param  connection       the connection of the business write the email reports
+     * @param  recipientEmail   the email address of the recipient
+     * @param  subject          the subject of the email
+     * @param  messageBody      the body of the email message
+     * @throws SQLException     if the message cannot be stored
+     */
+    private void sendEmailNotification(Connection connection, String recipientEmail, String subject, String messageBody) throws SQLException {
+        outbox.enqueue(connection, recipientEmail, subject, messageBody, null);
+    }
+
+        /**
+     * Removes an applicant from the applicants table in the database.
+     *
+     * @param  connection the database connection to use
+     * @param  username   the username of the applicant to be removed
+     * @throws SQLException  if a database access error occurs or other errors
+     */
+    private void removeFromApplicantsTable(Connection connection, String username) throws SQLException {
+        String deleteFromApplicantsQuery = "DELETE FROM applicants WHERE username = ?";
+        try (PreparedStatement deleteFromApplicantsStmt = connection.prepareStatement(deleteFromApplicantsQuery)) {
+            deleteFromApplicantsStmt.setString(1, username);
+            deleteFromApplicantsStmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Removes the specified username from the 'applicants.txt' file by queueing a tombstone.
+     *
+     * @param  username   the username to be removed
+     * @throws IOException  if an I/O error occurs
+     */
+    private void removeFromFile(String username) throws IOException {
+        applicantJournal.remove(username);
+    }
+    
+    /**
+     * Attempts a challenge for a participant. The questions are presented one at a time;
+     * each answer arrives as a later line and is handled by the returned AttemptSession.
+     *
+     * @param writer          the writer to write output to the user
+     * @param username        the username of the participant
+     * @param challengeId     the ID of the challenge
+     */
+    private void attemptChallenge(PrintWriter writer, String username, int challengeId) {
+        try (Connection connection = dataSource.getConnection()) {
+            // Fetch participant ID from database based on username
+            int participantId = getParticipantIdByUsername(connection, username);         
+            // Ensure participant ID is valid
+            if (participantId == -1) {
+                writer.println("Invalid participant username.");
+                return;
+            }        
+            // Fetch the challenge duration and questions, usually from the cache
+            QuestionBank.Challenge challenge = questionBank.get(challengeId);
+            // Checked before claiming: the attempt counter cannot reference a missing challenge
+            if (!challenge.exists) {
+                writer.println("Invalid challenge");
+                writer.flush();
+                return;
+            }
+
+            // Claim the next attempt, unless the participant has used them all
+            int attemptNumber = reserveAttempt(connection, participantId, challengeId);
+            if (attemptNumber == -1) {
+                writer.println("Max Attempts Reached!");
+                writer.flush();
+                return;
+            }
+
+            new AttemptSession(username, participantId, challenge, attemptNumber).askNextQuestion(writer);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            writer.println("Error during challenge attempt: " + e.getMessage());
+        }
+    }
+
+    /**
+     * An image being streamed by the client during registration. Each line carries one chunk
+     * as "<length> <base64>", where length is the decoded size; a line "0" ends the image and a
+     * negative length cancels it. Chunks are spooled to a temporary file, so the image is never
+     * held in memory as a whole, and the upload is refused once it exceeds
+     * APPLICANT_IMAGE_MAX_BYTES. An oversized image is still read to its end so that the
+     * following lines are not mistaken for commands.
+     */
+    private class ImageUpload implements LineHandler {
+        private final String[] parts;
+        private File spool;
+        private OutputStream out;
+        private long received;
+        private String error;
+
+        ImageUpload(String[] parts) {
+            this.parts = parts;
+        }
+
+        /**
+         * Spools one chunk of the image, or stores the applicant once the image is complete.
+         *
+         * @param  line     the chunk sent by the client
+         * @param  writer   the writer to write output to the user
+         */
+        public void onLine(String line, PrintWriter writer) {
+            String[] chunk = line.trim().split(" ", 2);
+            int length;
+            try {
+                length = Integer.parseInt(chunk[0]);
+            } catch (NumberFormatException e) {
+                discard();
+                writer.println("Error registering applicant: malformed image chunk");
+                return;
+            }
+            if (length < 0) {
+                discard();
+                writer.println("Error registering applicant: image upload cancelled");
+                return;
+            }
+            if (length == 0) {
+                finish(writer);
+                return;
+            }
+            if (error == null) {
+                received += length;
+                if (received > maxImageBytes) {
+                    error = "image is larger than " + maxImageBytes + " bytes";
+                } else {
+                    write(chunk, length);
+                }
+            }
+            pending = this;
+        }
+
+        private void write(String[] chunk, int length) {
+            try {
+                byte[] bytes = Base64.getDecoder().decode(chunk.length > 1 ? chunk[1] : "");
+                if (bytes.length != length) {
+                    error = "damaged image chunk";
+                    return;
+                }
+                if (out == null) {
+                    spool = File.createTempFile("applicant-image-", ".upload");
+                    out = new BufferedOutputStream(new FileOutputStream(spool));
+                }
+                out.write(bytes);
+            } catch (IllegalArgumentException e) {
+                error = "damaged image chunk";
+            } catch (IOException e) {
+                System.out.println("Error spooling applicant image: " + e.getMessage());
+                error = "image could not be stored";
+            }
+        }
+
+        private void finish(PrintWriter writer) {
+            try {
+                if (out != null) {
+                    out.close();
+                }
+                if (error == null && spool == null) {
+                    error = "no image received";
+                }
+                if (error != null) {
+                    writer.println("Error registering applicant: " + error);
+                } else {
+                    storeApplicant(parts, spool, writer);
+                }
+            } catch (IOException e) {
+                System.out.println("Error spooling applicant image: " + e.getMessage());
+                writer.println("Error registering applicant: image could not be stored");
+            } finally {
+                discard();
+            }
+        }
+
+        /**
+         * Closes and deletes the spooled image.
+         */
+        void discard() {
+            try {
+                if (out != null) {
+                    out.close();
+                }
+            } catch (IOException e) {
+                System.out.println("Error closing applicant image spool: " + e.getMessage());
+            }
+            if (spool != null && !spool.delete()) {
+                System.out.println("Could not delete applicant image spool " + spool);
+            }
+            out = null;
+            spool = null;
+        }
+    }
+
+    /**
+     * The state of a challenge attempt in progress. Between questions the session only holds
+     * this object, so a participant thinking about an answer does not tie up a thread.
+     */
+    private class AttemptSession implements LineHandler {
+        private final String username;
+        private final int participantId;
+        private final int challengeId;
+        private final QuestionBank.Challenge challenge;
+        private final int attemptNumber;
+        private final List<Integer> questionIds;
+        private final long startTime;
+        private final long endTime;
+        // Array to store per question data
+        private final List<String> reportLines = new ArrayList<>();
+        // Answers not yet handed to the attempt writer
+        private final List<AttemptWriter.Row> answers = new ArrayList<>();
+        private int totalScore = 0;
+        private int index = 0;
+        private int remainingQuestions;
+
+        private int questionId;
+        private String questionText;
+        private String correctAnswer;
+        private int marks;
+        private boolean finished;
+
+        AttemptSession(String username, int participantId, QuestionBank.Challenge challenge, int attemptNumber) {
+            this.username = username;
+            this.participantId = participantId;
+            this.challengeId = challenge.id;
+            this.challenge = challenge;
+            this.attemptNumber = attemptNumber;
+            // Each attempt gets its own question order
+            this.questionIds = challenge.shuffledQuestionIds();
+            this.remainingQuestions = questionIds.size();
+            // Timer variables
+            this.startTime = System.currentTimeMillis();
+            this.endTime = startTime + (challenge.duration * 60 * 1000); //milliseconds
+            metrics.attemptStarted();
+        }
+
+        /**
+         * Presents the next question and waits for its answer, or completes the challenge
+         * when no questions remain.
+         *
+         * @param  writer   the writer to write output to the user
+         */
+        void askNextQuestion(PrintWriter writer) {
+            try {
+                while (index < questionIds.size()) {
+                    questionId = questionIds.get(index);
+
+                    if (loadQuestion(questionId)) {
+                        // Display remaining questions and time
+                        writer.println("Remaining Questions: " + remainingQuestions);
+                        displayRemainingTime(startTime, endTime, writer);
+
+                        // Present question to participant
+                        writer.println("Question ID: " + questionId);
+                        writer.println("Question: " + questionText);
+                        writer.print("Your answer: ");
+                        writer.flush();
+                        pending = this;
+                        return;
+                    }
+
+                    if (!advance(writer)) {
+                        break;
+                    }
+                }
+                complete(writer);
+            } catch (SQLException e) {
+                e.printStackTrace();
+                writer.println("Error during challenge attempt: " + e.getMessage());
+            }
+        }
+
+        /**
+         * Fetches the text, answer and marks of a question into the session.
+         *
+         * @param  questionId  the ID of the question
+         * @return             true if the question exists
+         */
+        private boolean loadQuestion(int questionId) {
+            QuestionBank.Question question = challenge.question(questionId);
+            if (question == null) {
+                return false;
+            }
+            questionText = question.text;
+            correctAnswer = question.answer;
+            marks = question.marks;
+            return true;
+        }
+
+        /**
+         * Checks the participant's answer to the current question and moves on.
+         *
+         * @param  line     the answer sent by the participant
+         * @param  writer   the writer to write output to the user
+         */
+        public void onLine(String line, PrintWriter writer) {
+            String userAnswer = line.trim();
+
+            // Check answer correctness and record attempt
+            boolean isCorrect = correctAnswer.equalsIgnoreCase(userAnswer);
+            recordAnswer(new AttemptWriter.Row(participantId, challengeId, questionId, attemptNumber, isCorrect, marks, System.currentTimeMillis() - startTime));
+            // Format feedback
+            StringBuilder feedback = new StringBuilder();
+            feedback.append(userAnswer);
+            feedback.append(", ").append(isCorrect ? "Correct!" : "Incorrect! Correct answer was: " + correctAnswer);
+
+            // Print feedback to writer
+            writer.println(feedback.toString());
+            writer.println();
+
+            long timeTakenSeconds = (System.currentTimeMillis() - startTime) / 1000;
+            totalScore += (isCorrect ? marks : 0);
+            // Store question data
+            String reportLine = "Question ID: " + questionId + "\n" +
+                            "Question: " + questionText + "\n" +
+                            "Your Answer: " + userAnswer + "\n" +
+                            "Correct Answer: " + correctAnswer + "\n" +
+                            "Correct: " + isCorrect + "\n" +
+                            "Score: " + (isCorrect ? marks : 0) + "\n" +
+                            "Time Taken: " + timeTakenSeconds + " seconds" +"\n" +
+                            "Total Score: " + totalScore + "\n" +
+                            "\n";
+            reportLines.add(reportLine);
+
+            if (advance(writer)) {
+                askNextQuestion(writer);
+            } else {
+                try {
+                    complete(writer);
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                    writer.println("Error during challenge attempt: " + e.getMessage());
+                }
+            }
+        }
+
+        /**
+         * Moves past the current question.
+         *
+         * @param  writer   the writer to write output to the user
+         * @return          false if the time is up and the challenge must close
+         */
+        private boolean advance(PrintWriter writer) {
+            index++;
+            remainingQuestions--;
+
+            // Check if time is up
+            if (System.currentTimeMillis() >= endTime) {
+                writer.println("Time's up! Challenge will be closed.");
+                return false;
+            }
+            return true;
+        }
+
+        private synchronized void recordAnswer(AttemptWriter.Row row) {
+            answers.add(attemptWriter.journal(row));
+        }
+
+        /**
+         * Hands the answers given so far to the attempt writer, to be stored in the next batch.
+         */
+        synchronized void submitAnswers() {
+            if (!answers.isEmpty()) {
+                attemptWriter.submit(new ArrayList<>(answers));
+                answers.clear();
+            }
+        }
+
+        /**
+         * Marks the attempt as over, whether it was completed or abandoned.
+         */
+        synchronized void finish() {
+            if (!finished) {
+                finished = true;
+                metrics.attemptFinished();
+            }
+        }
+
+        private void complete(PrintWriter writer) throws SQLException {
+            finish();
+            submitAnswers();
+            boolean improved = leaderboard.record(challengeId, username, totalScore, System.currentTimeMillis() - startTime);
+            // Provide challenge summary after all questions are attempted
+            String email;
+            try (Connection connection = dataSource.getConnection()) {
+                email = getEmailForParticipant(connection, username);
+            }
+            writer.println("Challenge completed. Summary has been sent to your email: "+ email);
+            if (improved) {
+                writer.println("This is your best attempt so far: rank " + leaderboard.rank(challengeId, username) + " of " + leaderboard.size(challengeId));
+            }
+            writer.flush();
+            reportPipeline.submit(username, email, challengeId, attemptNumber, reportLines);
+        }
+    }
+
+    /**
+     * Retrieves the participant ID from the database based on the provided username.
+     *
+     * @param  connection the database connection to use
+     * @param  username  the username of the participant
+     * @return           the participant ID if found, -1 otherwise
+     * @throws SQLException if there is an error with the database
+     */
+    private int getParticipantIdByUsername(Connection connection, String username) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(PARTICIPANT_ID_QUERY)) {
+            statement.setString(1, username);
+            ResultSet resultSet = statement.executeQuery();
+            if (resultSet.next()) {
+                return resultSet.getInt("id");
+            }
+        }
+        return -1; // Participant not found
+    }
+    
+    /**
+     * Claims the next attempt of a participant at a challenge. The counter row is locked by the
+     * conditional update, so concurrent logins of the same participant cannot both claim the
+     * last attempt. The attempt is numbered after the highest number used so far rather than by
+     * the count of attempts, which legacy attempts with gaps in their numbers would make reuse.
+     *
+     * @param  connection     the database connection to use
+     * @param  participantId  the ID of the participant
+     * @param  challengeId    the ID of the challenge
+     * @return                the number of the claimed attempt, or -1 if no attempts are left
+     * @throws SQLException   if there is an error with the database
+     */
+    private int reserveAttempt(Connection connection, int participantId, int challengeId) throws SQLException {
+        connection.setAutoCommit(false);
+        try (PreparedStatement statement = connection.prepareStatement(CREATE_ATTEMPT_COUNTER_QUERY)) {
+            statement.setInt(1, participantId);
+            statement.setInt(2, challengeId);
+            statement.executeUpdate();
+        }
+        try (PreparedStatement statement = connection.prepareStatement(CLAIM_ATTEMPT_QUERY)) {
+            statement.setInt(1, participantId);
+            statement.setInt(2, challengeId);
+            statement.setInt(3, MAX_ATTEMPTS);
+            if (statement.executeUpdate() == 0) {
+                connection.commit();
+                connection.setAutoCommit(true);
+                return -1;
+            }
+        }
+        int attemptNumber = -1;
+        try (PreparedStatement statement = connection.prepareStatement(LAST_ATTEMPT_NUMBER_QUERY)) {
+            statement.setInt(1, participantId);
+            statement.setInt(2, challengeId);
+            ResultSet resultSet = statement.executeQuery();
+            if (resultSet.next()) {
+                attemptNumber = resultSet.getInt("last_attempt_number");
+            }
+        }
+        connection.commit();
+        connection.setAutoCommit(true);
+        return attemptNumber;
+    }
+    
+    /**
+     * Displays the remaining time in seconds based on the start and end time.
+     *
+     * @param  startTime    the start time in milliseconds
+     * @param  endTime      the end time in milliseconds
+     * @param  writer       the PrintWriter to write the remaining time
+     */
+    private void displayRemainingTime(long startTime, long endTime, PrintWriter writer) {
+        long currentTime = System.currentTimeMillis();
+        long remainingTimeMillis = endTime - currentTime;
+    
+        if (remainingTimeMillis <= 0) {
+            writer.println("Time Remaining: 0 seconds");
+        } else {
+            long remainingSeconds = remainingTimeMillis / 1000;
+            writer.println("Time Remaining: " + remainingSeconds + " seconds");
+        }
+    }
+
+    /**
+     * Logs the app data to a text file. The line is only queued here; the applicant journal
+     * writes it in the background together with whatever else is waiting.
+     *
+     * @param  data   the data to be logged
+     * @throws IOException  if an I/O error occurs while writing to the file
+     */
+    private void logToTextFile(String data) throws IOException {
+        applicantJournal.append(data);
+    }
+
+    /**
+     * Registers a school in the system.
+     *
+     * @param  parts   an array of strings containing the school's information
+     * @param  writer  a PrintWriter object for writing the response
+     */
+    private void registerSchool(String parts[],PrintWriter writer) {
+        String name = parts[1];
+        String district = parts[2];
+        String schoolRegNumber = parts[3];
+        String representativeEmail = parts[4];
+        String representativeName = parts[5];
+
+        try (Connection connection = dataSource.getConnection()) {
+            logToTextFile(String.join(" ", parts));
+
+            // Check if the school is in the schools table
+            String checkQuery = "SELECT * FROM schools WHERE school_registration_number = ?";
+            try (PreparedStatement checkStatement = connection.prepareStatement(checkQuery)) {
+                checkStatement.setString(1, schoolRegNumber);
+                ResultSet checkResult = checkStatement.executeQuery();
+                if (checkResult.next()) {
+                    writer.println("School already exists");
+                    return;
+                }
+            }
+
+            // Add the school to the schools table
+            String query = "INSERT INTO schools (name,district,school_registration_number,representative_email,representative_name) VALUES (?, ?, ?, ?, ?)";
+            int rowsInserted;
+            try (PreparedStatement statement = connection.prepareStatement(query)) {
+                statement.setString(1, name);
+                statement.setString(2, district);
+                statement.setString(3, schoolRegNumber);
+                statement.setString(4, representativeEmail);
+                statement.setString(5, representativeName);
+
+                rowsInserted = statement.executeUpdate();
+            }
+            if (rowsInserted > 0) {
+                writer.println("School registered successfully!");
+            }
+
+        } catch (SQLException | IOException e) {
+            e.printStackTrace();
+            writer.println("Error registering school: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,153 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+
+/**
+ * Coalesces "Please confirm the applicant" notices into one digest email per school
+ * representative.
+ *
+ * Each notice is held in the email outbox (status 'held') in the same transaction as the
+ * registration, so it is as durable as any other email. Once a representative has
+ * DIGEST_MAX_ITEMS held notices, or the oldest has waited DIGEST_WINDOW_SECONDS, the held
+ * notices are merged into a single pending email in one transaction. With
+ * DIGEST_WINDOW_SECONDS=0 every notice is sent on its own, as before.
+ */
+class ConfirmationDigest {
+    private static final String SUBJECT = "Confirmation";
+    static final String DUE_QUERY = "SELECT recipient FROM email_outbox WHERE status = 'held' GROUP BY recipient " +
+                                    "HAVING COUNT(*) >= ? OR MIN(created_at) <= NOW() - INTERVAL ? SECOND";
+    private static final String HELD_QUERY = "SELECT id, body FROM email_outbox WHERE status = 'held' AND recipient = ? ORDER BY id FOR UPDATE SKIP LOCKED";
+    private static final String MARK_MERGED_QUERY = "UPDATE email_outbox SET status = 'merged' WHERE id = ?";
+
+    private final DataSource dataSource;
+    private final MailOutbox outbox;
+    private final int windowSeconds;
+    private final int maxItems;
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(SessionExecutor.namedThreads("mail-digest-"));
+
+    ConfirmationDigest(DataSource dataSource, MailOutbox outbox, int windowSeconds, int maxItems) {
+        this.dataSource = dataSource;
+        this.outbox = outbox;
+        this.windowSeconds = windowSeconds;
+        this.maxItems = maxItems;
+    }
+
+    /**
+     * Creates a digest stage from the DIGEST_* settings.
+     *
+     * @param  dataSource   the pool to merge held notices with
+     * @param  outbox       the outbox that sends the digests
+     * @return              the digest stage, not yet started
+     */
+    static ConfirmationDigest fromConfig(DataSource dataSource, MailOutbox outbox) {
+        return new ConfirmationDigest(dataSource, outbox,
+                Server.getInt("DIGEST_WINDOW_SECONDS", 300),
+                Server.getInt("DIGEST_MAX_ITEMS", 25));
+    }
+
+    /**
+     * Starts checking for due digests every DIGEST_POLL_MS milliseconds.
+     */
+    void start() {
+        if (windowSeconds <= 0) {
+            return;
+        }
+        long pollMs = Server.getInt("DIGEST_POLL_MS", 1000);
+        flusher.scheduleWithFixedDelay(this::flushDue, pollMs, pollMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Records that a representative should confirm an applicant, using the caller's connection
+     * so the notice commits together with the registration.
+     *
+     * @param  connection            the connection of the registration
+     * @param  representativeEmail   the email address of the school representative
+     * @param  username              the username of the new applicant
+     * @throws SQLException          if the notice cannot be stored
+     */
+    void add(Connection connection, String representativeEmail, String username) throws SQLException {
+        if (windowSeconds <= 0) {
+            outbox.enqueue(connection, representativeEmail, SUBJECT, "Please confirm the applicant: " + username, null);
+        } else {
+            outbox.hold(connection, representativeEmail, SUBJECT, username);
+        }
+    }
+
+    /**
+     * Merges the held notices of every representative whose window or count has been reached.
+     */
+    private void flushDue() {
+        try {
+            List<String> recipients = new ArrayList<>();
+            try (Connection connection = dataSource.getConnection();
+                 PreparedStatement statement = connection.prepareStatement(DUE_QUERY)) {
+                statement.setInt(1, maxItems);
+                statement.setInt(2, windowSeconds);
+                ResultSet resultSet = statement.executeQuery();
+                while (resultSet.next()) {
+                    recipients.add(resultSet.getString("recipient"));
+                }
+            }
+            for (String recipient : recipients) {
+                flush(recipient);
+            }
+        } catch (SQLException e) {
+            System.out.println("Error flushing confirmation digests: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Replaces a representative's held notices with one digest email.
+     *
+     * @param  recipient   the email address of the representative
+     * @throws SQLException if the notices cannot be merged
+     */
+    private void flush(String recipient) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            List<Long> ids = new ArrayList<>();
+            List<String> usernames = new ArrayList<>();
+            try (PreparedStatement statement = connection.prepareStatement(HELD_QUERY)) {
+                statement.setString(1, recipient);
+                ResultSet resultSet = statement.executeQuery();
+                while (resultSet.next()) {
+                    ids.add(resultSet.getLong("id"));
+                    usernames.add(resultSet.getString("body"));
+                }
+            }
+            if (ids.isEmpty()) {
+                return;
+            }
+
+            outbox.enqueue(connection, recipient, SUBJECT, digestBody(usernames), null);
+            try (PreparedStatement statement = connection.prepareStatement(MARK_MERGED_QUERY)) {
+                for (long id : ids) {
+                    statement.setLong(1, id);
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+            connection.commit();
+            outbox.wakeUp();
+            System.out.println("Merged " + ids.size() + " confirmation notices for " + recipient);
+        }
+    }
+
+    private static String digestBody(List<String> usernames) {
+        if (usernames.size() == 1) {
+            return "Please confirm the applicant: " + usernames.get(0);
+        }
+        StringBuilder body = new StringBuilder("Please confirm the following " + usernames.size() + " applicants:\n");
+        for (String username : usernames) {
+            body.append("- ").append(username).append('\n');
+        }
+        return body.toString();
+    }
+}
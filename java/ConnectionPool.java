@@ -0,0 +1,439 @@
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
+
+/**
+ * A small JDBC connection pool.
+ *
+ * Connections are handed out as proxies whose close() returns the physical connection to the
+ * pool. The pool keeps between DB_POOL_MIN_SIZE and DB_POOL_MAX_SIZE physical connections,
+ * validates a connection on borrow if it has been idle for a while, waits up to
+ * DB_POOL_BORROW_TIMEOUT_MS for a free connection, and reports connections held for longer
+ * than DB_POOL_LEAK_THRESHOLD_MS together with the thread that borrowed them. The borrowing
+ * stack is only recorded when DB_POOL_LEAK_STACKS is true, since capturing it costs every
+ * borrow. Each physical
+ * connection keeps up to DB_STATEMENT_CACHE_SIZE prepared statements between borrowers, and
+ * every statement executed through it is timed by a QueryTracer.
+ */
+class ConnectionPool implements DataSource {
+    private static final long VALIDATE_AFTER_IDLE_MS = 500;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int minSize;
+    private final int maxSize;
+    private final long borrowTimeoutMs;
+    private final long leakThresholdMs;
+    private final boolean leakStacks;
+    private final int statementCacheSize;
+
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final Set<PooledConnection> borrowed = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger total = new AtomicInteger();
+    private final ScheduledExecutorService housekeeper = Executors.newSingleThreadScheduledExecutor(SessionExecutor.namedThreads("db-pool-"));
+
+    private final AtomicLong borrows = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong validationFailures = new AtomicLong();
+    private final AtomicLong leaks = new AtomicLong();
+
+    private final StatementCache.Stats statementStats = new StatementCache.Stats();
+    private final QueryTracer queryTracer;
+
+    ConnectionPool(String url, String user, String password, int minSize, int maxSize, long borrowTimeoutMs, long leakThresholdMs, boolean leakStacks,
+                   int statementCacheSize, QueryTracer queryTracer) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.borrowTimeoutMs = borrowTimeoutMs;
+        this.leakThresholdMs = leakThresholdMs;
+        this.leakStacks = leakStacks;
+        this.statementCacheSize = statementCacheSize;
+        this.queryTracer = queryTracer;
+    }
+
+    /**
+     * Creates a pool from the DB_* settings and opens its minimum number of connections.
+     *
+     * @return          the started connection pool
+     * @throws SQLException if the initial connections cannot be opened
+     */
+    static ConnectionPool fromConfig() throws SQLException {
+        // Server-side prepared statements make the statement cache save the parse on every execution,
+        // and rewritten batches send a whole executeBatch() as multi-row inserts
+        String url = "jdbc:mysql://" + Server.get("DB_HOST") + ":" + Server.get("DB_PORT") + "/" + Server.get("DB_NAME")
+                + "?" + Server.get("DB_URL_OPTIONS", "useServerPrepStmts=true&rewriteBatchedStatements=true");
+        ConnectionPool pool = new ConnectionPool(url, Server.get("DB_USER"), Server.get("DB_PASS"),
+                Server.getInt("DB_POOL_MIN_SIZE", 2),
+                Server.getInt("DB_POOL_MAX_SIZE", 20),
+                Server.getInt("DB_POOL_BORROW_TIMEOUT_MS", 5000),
+                Server.getInt("DB_POOL_LEAK_THRESHOLD_MS", 30000),
+                Boolean.parseBoolean(Server.get("DB_POOL_LEAK_STACKS", "false")),
+                Server.getInt("DB_STATEMENT_CACHE_SIZE", 64),
+                QueryTracer.fromConfig());
+        pool.start(Server.getInt("DB_POOL_REPORT_INTERVAL", 60));
+        return pool;
+    }
+
+    /**
+     * Opens the minimum number of connections and starts the housekeeping task.
+     *
+     * @param  reportIntervalSeconds   how often to log pool statistics, or 0 to disable reporting
+     * @throws SQLException if a connection cannot be opened
+     */
+    void start(int reportIntervalSeconds) throws SQLException {
+        while (total.get() < minSize) {
+            total.incrementAndGet();
+            idle.addLast(open());
+        }
+        housekeeper.scheduleAtFixedRate(this::housekeep, 1, 1, TimeUnit.SECONDS);
+        if (reportIntervalSeconds > 0) {
+            housekeeper.scheduleAtFixedRate(() -> System.out.println("DB pool: " + describe()),
+                    reportIntervalSeconds, reportIntervalSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Borrows a connection from the pool. Closing the returned connection gives it back.
+     *
+     * @return          a pooled connection
+     * @throws SQLException if no connection becomes available within the borrow timeout
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(borrowTimeoutMs);
+
+        while (true) {
+            PooledConnection pooled = idle.pollFirst();
+            if (pooled == null) {
+                pooled = openIfBelowMax();
+            }
+            if (pooled == null) {
+                try {
+                    pooled = idle.pollFirst(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLTransientConnectionException("Interrupted while waiting for a database connection");
+                }
+                if (pooled == null) {
+                    timeouts.incrementAndGet();
+                    throw new SQLTransientConnectionException("No database connection available within " + borrowTimeoutMs + " ms (" + describe() + ")");
+                }
+            }
+            if (!validate(pooled)) {
+                validationFailures.incrementAndGet();
+                destroy(pooled);
+                continue;
+            }
+
+            long waited = System.nanoTime() - start;
+            borrows.incrementAndGet();
+            waitNanos.addAndGet(waited);
+            maxWaitNanos.accumulateAndGet(waited, Math::max);
+
+            pooled.borrowedAt = System.currentTimeMillis();
+            pooled.borrowedBy = Thread.currentThread().getName();
+            pooled.borrowStack = leakThresholdMs > 0 && leakStacks ? new Throwable("Connection borrowed here") : null;
+            pooled.leakReported = false;
+            borrowed.add(pooled);
+            return pooled.lease();
+        }
+    }
+
+    private PooledConnection openIfBelowMax() throws SQLException {
+        int current;
+        do {
+            current = total.get();
+            if (current >= maxSize) {
+                return null;
+            }
+        } while (!total.compareAndSet(current, current + 1));
+        try {
+            return open();
+        } catch (SQLException e) {
+            total.decrementAndGet();
+            throw e;
+        }
+    }
+
+    private PooledConnection open() throws SQLException {
+        return new PooledConnection(DriverManager.getConnection(url, user, password));
+    }
+
+    private boolean validate(PooledConnection pooled) {
+        if (System.currentTimeMillis() - pooled.returnedAt < VALIDATE_AFTER_IDLE_MS) {
+            return true;
+        }
+        try {
+            return pooled.physical.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Takes a connection back from a borrower, resetting its transaction state.
+     *
+     * @param  pooled   the connection being returned
+     */
+    private void release(PooledConnection pooled) {
+        borrowed.remove(pooled);
+        pooled.statements.releaseAll();
+        try {
+            if (pooled.physical.isClosed()) {
+                destroy(pooled);
+                return;
+            }
+            if (!pooled.physical.getAutoCommit()) {
+                pooled.physical.rollback();
+                pooled.physical.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            destroy(pooled);
+            return;
+        }
+        pooled.returnedAt = System.currentTimeMillis();
+        pooled.borrowedBy = null;
+        pooled.borrowStack = null;
+        idle.addFirst(pooled);
+    }
+
+    private void destroy(PooledConnection pooled) {
+        total.decrementAndGet();
+        pooled.statements.closeAll();
+        try {
+            pooled.physical.close();
+        } catch (SQLException e) {
+            System.out.println("Error closing database connection: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reports leaked connections and tops the pool back up to its minimum size.
+     */
+    private void housekeep() {
+        long now = System.currentTimeMillis();
+        if (leakThresholdMs > 0) {
+            for (PooledConnection pooled : borrowed) {
+                if (!pooled.leakReported && now - pooled.borrowedAt > leakThresholdMs) {
+                    pooled.leakReported = true;
+                    leaks.incrementAndGet();
+                    System.out.println("Possible database connection leak: held for " + (now - pooled.borrowedAt) + " ms by " + pooled.borrowedBy);
+                    Throwable borrowStack = pooled.borrowStack;
+                    if (borrowStack != null) {
+                        borrowStack.printStackTrace(System.out);
+                    }
+                }
+            }
+        }
+        try {
+            while (total.get() < minSize) {
+                PooledConnection pooled = openIfBelowMax();
+                if (pooled == null) {
+                    break;
+                }
+                idle.addLast(pooled);
+            }
+        } catch (SQLException e) {
+            System.out.println("Error opening database connection: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the number of physical connections currently open.
+     *
+     * @return          the open connection count
+     */
+    int getTotalCount() {
+        return total.get();
+    }
+
+    /**
+     * Returns the number of connections currently lent out.
+     *
+     * @return          the borrowed connection count
+     */
+    int getActiveCount() {
+        return borrowed.size();
+    }
+
+    /**
+     * Returns the number of connections waiting in the pool.
+     *
+     * @return          the idle connection count
+     */
+    int getIdleCount() {
+        return idle.size();
+    }
+
+    /**
+     * Returns the average time borrowers waited for a connection.
+     *
+     * @return          the mean wait in milliseconds
+     */
+    double getAverageWaitMillis() {
+        long count = borrows.get();
+        return count == 0 ? 0 : waitNanos.get() / 1e6 / count;
+    }
+
+    /**
+     * Returns the longest time a borrower waited for a connection.
+     *
+     * @return          the maximum wait in milliseconds
+     */
+    double getMaxWaitMillis() {
+        return maxWaitNanos.get() / 1e6;
+    }
+
+    /**
+     * Returns the statement cache counters of all connections in the pool.
+     *
+     * @return          the hit, miss and eviction counters
+     */
+    StatementCache.Stats getStatementStats() {
+        return statementStats;
+    }
+
+    /**
+     * Returns the tracer timing the statements executed through the pool.
+     *
+     * @return          the query tracer
+     */
+    QueryTracer getQueryTracer() {
+        return queryTracer;
+    }
+
+    /**
+     * Describes the pool size and borrow statistics.
+     *
+     * @return          a one-line summary for logging
+     */
+    String describe() {
+        return String.format("total=%d, active=%d, idle=%d, borrows=%d, avgWaitMs=%.2f, maxWaitMs=%.2f, timeouts=%d, validationFailures=%d, leaks=%d, %s",
+                getTotalCount(), getActiveCount(), getIdleCount(), borrows.get(), getAverageWaitMillis(), getMaxWaitMillis(),
+                timeouts.get(), validationFailures.get(), leaks.get(), statementStats.describe());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("The pool only hands out connections for its configured user");
+    }
+
+    @Override
+    public PrintWriter getLogWriter() {
+        return null;
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) {
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) {
+    }
+
+    @Override
+    public int getLoginTimeout() {
+        return 0;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("Not a wrapper for " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this);
+    }
+
+    /**
+     * A physical connection owned by the pool.
+     */
+    private class PooledConnection {
+        private final Connection physical;
+        private final StatementCache statements;
+        private volatile long borrowedAt;
+        private volatile long returnedAt;
+        private volatile String borrowedBy;
+        private volatile Throwable borrowStack;
+        private volatile boolean leakReported;
+
+        PooledConnection(Connection physical) {
+            this.physical = physical;
+            this.statements = new StatementCache(physical, statementCacheSize, statementStats, queryTracer);
+        }
+
+        /**
+         * Wraps the physical connection for one borrower. The wrapper stops working once it
+         * has been closed, so a stale reference cannot use a connection lent to someone else.
+         *
+         * @return          the connection proxy handed to the borrower
+         */
+        Connection lease() {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class }, new Lease());
+        }
+
+        private class Lease implements InvocationHandler {
+            private boolean closed;
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                switch (method.getName()) {
+                    case "close":
+                        if (!closed) {
+                            closed = true;
+                            release(PooledConnection.this);
+                        }
+                        return null;
+                    case "isClosed":
+                        return closed || physical.isClosed();
+                    default:
+                        if (closed) {
+                            throw new SQLException("Connection is closed");
+                        }
+                        if ("prepareStatement".equals(method.getName()) && args.length == 1) {
+                            return statements.prepare((String) args[0], (Connection) proxy);
+                        }
+                        try {
+                            return method.invoke(physical, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                }
+            }
+        }
+    }
+}
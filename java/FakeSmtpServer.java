@@ -0,0 +1,124 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A local SMTP listener that accepts and discards every message, for exercising the mail
+ * outbox without a real mail provider. Run it and start the server with EMAIL_HOST=localhost,
+ * EMAIL_PORT=2525 and EMAIL_SECURITY=none.
+ *
+ * Usage: java FakeSmtpServer [port] [delayMs]
+ */
+public class FakeSmtpServer {
+    private final int port;
+    private final long delayMs;
+    private final AtomicLong received = new AtomicLong();
+
+    FakeSmtpServer(int port, long delayMs) {
+        this.port = port;
+        this.delayMs = delayMs;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 2525;
+        long delayMs = args.length > 1 ? Long.parseLong(args[1]) : 0;
+        new FakeSmtpServer(port, delayMs).serve();
+    }
+
+    /**
+     * Returns the number of messages accepted so far.
+     *
+     * @return          the received message count
+     */
+    long getReceivedCount() {
+        return received.get();
+    }
+
+    /**
+     * Accepts SMTP connections until the process is stopped, one thread per connection.
+     *
+     * @throws IOException   if the listening socket cannot be opened
+     */
+    void serve() throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(port)) {
+            System.out.println("Fake SMTP server is listening on port " + port);
+            while (true) {
+                Socket socket = serverSocket.accept();
+                Thread thread = new Thread(() -> handle(socket), "fake-smtp-" + socket.getPort());
+                thread.setDaemon(true);
+                thread.start();
+            }
+        }
+    }
+
+    private void handle(Socket socket) {
+        try (Socket s = socket;
+             BufferedReader reader = new BufferedReader(new InputStreamReader(s.getInputStream(), "US-ASCII"));
+             PrintWriter writer = new PrintWriter(s.getOutputStream(), true)) {
+            reply(writer, "220 localhost fake SMTP ready");
+            String recipient = null;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String command = line.length() >= 4 ? line.substring(0, 4).toUpperCase() : line.toUpperCase();
+                switch (command) {
+                    case "EHLO":
+                        writer.print("250-localhost\r\n250-AUTH PLAIN LOGIN\r\n");
+                        reply(writer, "250 8BITMIME");
+                        break;
+                    case "HELO":
+                        reply(writer, "250 localhost");
+                        break;
+                    case "AUTH":
+                        String[] parts = line.split(" ");
+                        if (parts.length > 1 && "LOGIN".equalsIgnoreCase(parts[1])) {
+                            reply(writer, "334 VXNlcm5hbWU6");
+                            reader.readLine();
+                            reply(writer, "334 UGFzc3dvcmQ6");
+                            reader.readLine();
+                        } else if (parts.length == 2) {
+                            reply(writer, "334 ");
+                            reader.readLine();
+                        }
+                        reply(writer, "235 2.7.0 Authentication successful");
+                        break;
+                    case "RCPT":
+                        recipient = line.substring(line.indexOf(':') + 1).trim();
+                        reply(writer, "250 OK");
+                        break;
+                    case "DATA":
+                        reply(writer, "354 End data with <CR><LF>.<CR><LF>");
+                        long bytes = 0;
+                        while ((line = reader.readLine()) != null && !line.equals(".")) {
+                            bytes += line.length() + 2;
+                        }
+                        if (delayMs > 0) {
+                            Thread.sleep(delayMs);
+                        }
+                        System.out.println("Received message #" + received.incrementAndGet() + " for " + recipient + " (" + bytes + " bytes)");
+                        reply(writer, "250 OK queued");
+                        break;
+                    case "QUIT":
+                        reply(writer, "221 Bye");
+                        return;
+                    default:
+                        // MAIL, RSET, NOOP and anything else are simply accepted
+                        reply(writer, "250 OK");
+                        break;
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Fake SMTP connection error: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void reply(PrintWriter writer, String line) {
+        writer.print(line + "\r\n");
+        writer.flush();
+    }
+}
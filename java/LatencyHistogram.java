@@ -0,0 +1,108 @@
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-size latency histogram that any number of threads can record into without locking.
+ *
+ * Latencies are kept in microseconds in log-linear buckets: every value below 128 has its own
+ * bucket and each power of two above that is split into 64 buckets, so a percentile is
+ * reported to within about 1.5% whatever its magnitude, in 32KB per histogram.
+ */
+class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = 64 * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalMicros = new AtomicLong();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    /**
+     * Records one latency.
+     *
+     * @param  nanos   the latency in nanoseconds
+     */
+    void record(long nanos) {
+        long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+        counts.incrementAndGet(bucket(micros));
+        count.incrementAndGet();
+        totalMicros.addAndGet(micros);
+        maxMicros.accumulateAndGet(micros, Math::max);
+    }
+
+    /**
+     * Returns the number of latencies recorded.
+     *
+     * @return          the count
+     */
+    long count() {
+        return count.get();
+    }
+
+    /**
+     * Returns the sum of the recorded latencies.
+     *
+     * @return          the total in microseconds
+     */
+    long totalMicros() {
+        return totalMicros.get();
+    }
+
+    /**
+     * Returns the latency that the given fraction of the recorded latencies do not exceed.
+     *
+     * @param  fraction   the percentile as a fraction, such as 0.99
+     * @return            the latency in microseconds, or 0 if nothing was recorded
+     */
+    long percentileMicros(double fraction) {
+        long total = count.get();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestValue(i), maxMicros.get());
+            }
+        }
+        return maxMicros.get();
+    }
+
+    /**
+     * Describes the recorded latencies.
+     *
+     * @return          a one-line summary in milliseconds
+     */
+    String describe() {
+        long total = Math.max(1, count.get());
+        return "count=" + count.get() + ", meanMs=" + millis(totalMicros.get() / total) +
+               ", p50Ms=" + millis(percentileMicros(0.50)) + ", p99Ms=" + millis(percentileMicros(0.99)) +
+               ", p999Ms=" + millis(percentileMicros(0.999)) + ", maxMs=" + millis(maxMicros.get());
+    }
+
+    private static String millis(long micros) {
+        return String.format("%.2f", micros / 1000.0);
+    }
+
+    private static int bucket(long micros) {
+        if (micros < 2 * SUB_BUCKETS) {
+            return (int) micros;
+        }
+        // Keep the top SUB_BUCKET_BITS + 1 bits of the value; the shift says which power of two it is in
+        int shift = 63 - Long.numberOfLeadingZeros(micros) - SUB_BUCKET_BITS;
+        return (int) (shift * SUB_BUCKETS + (micros >>> shift));
+    }
+
+    private static long highestValue(int bucket) {
+        if (bucket < 2 * SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long subBucket = bucket - (long) shift * SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,315 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import javax.sql.DataSource;
+
+/**
+ * Live per-challenge rankings, kept in memory and updated as attempts complete.
+ *
+ * Each participant is ranked by their best attempt at a challenge: the highest score, then
+ * the shortest time. The standings of a challenge are held in a skip list that also counts
+ * how many entries each link jumps over, so recording an attempt, finding a participant's
+ * rank and reading the top K all take O(log n) rather than a GROUP BY over
+ * participant_attempts. Each challenge has its own lock, held only for those few steps.
+ *
+ * On startup the rankings are rebuilt from participant_attempts once, from the attempts that
+ * were finished: every question of the challenge answered, or time run out. An attempt
+ * abandoned part-way is never ranked, neither live nor after a restart.
+ */
+class Leaderboard {
+    // Finished attempts only: every question answered, or the last answer given after time ran out
+    private static final String LOAD_QUERY = "SELECT a.challenge_id, p.username, " +
+            "SUM(CASE WHEN a.is_correct THEN a.score ELSE 0 END) AS total_score, MAX(a.time_taken) AS time_taken " +
+            "FROM participant_attempts a JOIN participants p ON p.id = a.participant_id " +
+            "JOIN challenges c ON c.id = a.challenge_id " +
+            "JOIN (SELECT challenge_id, COUNT(*) AS questions FROM challenge_questions GROUP BY challenge_id) cq " +
+            "ON cq.challenge_id = a.challenge_id " +
+            "GROUP BY a.challenge_id, p.username, a.attempt_number " +
+            "HAVING COUNT(*) >= MAX(cq.questions) OR MAX(a.time_taken) >= MAX(c.duration) * 60000";
+
+    // Best first: higher score, then less time, then username so that no two standings tie
+    static final Comparator<Standing> ORDER = Comparator.comparingInt((Standing standing) -> -standing.score)
+            .thenComparingLong(standing -> standing.timeMillis)
+            .thenComparing(standing -> standing.username);
+
+    private final DataSource dataSource;
+    private final Map<Integer, Board> boards = new ConcurrentHashMap<>();
+
+    Leaderboard(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Rebuilds the rankings from the attempts stored in the database.
+     *
+     * @throws SQLException if the attempts cannot be read
+     */
+    void load() throws SQLException {
+        boards.clear();
+        int attempts = 0;
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(LOAD_QUERY)) {
+            // Stream the rows instead of buffering the whole result in the driver
+            statement.setFetchSize(Integer.MIN_VALUE);
+            ResultSet resultSet = statement.executeQuery();
+            while (resultSet.next()) {
+                record(resultSet.getInt("challenge_id"), resultSet.getString("username"),
+                        resultSet.getInt("total_score"), resultSet.getLong("time_taken"));
+                attempts++;
+            }
+        }
+        System.out.println("Leaderboard loaded " + attempts + " attempts (" + describe() + ")");
+    }
+
+    /**
+     * Records a finished attempt. It replaces the participant's standing only if it is better.
+     *
+     * @param  challengeId   the ID of the challenge
+     * @param  username      the participant's username
+     * @param  score         the attempt's total score
+     * @param  timeMillis    how long the attempt took
+     * @return               true if this is now the participant's best attempt
+     */
+    boolean record(int challengeId, String username, int score, long timeMillis) {
+        return boards.computeIfAbsent(challengeId, id -> new Board()).offer(new Standing(username, score, timeMillis));
+    }
+
+    /**
+     * Returns the best standings at a challenge.
+     *
+     * @param  challengeId   the ID of the challenge
+     * @param  count         how many standings to return at most
+     * @return               the standings, best first
+     */
+    List<Standing> top(int challengeId, int count) {
+        Board board = boards.get(challengeId);
+        return board == null ? new ArrayList<>() : board.top(count);
+    }
+
+    /**
+     * Returns a participant's place at a challenge.
+     *
+     * @param  challengeId   the ID of the challenge
+     * @param  username      the participant's username
+     * @return               the rank starting at 1, or 0 if they have not completed an attempt
+     */
+    int rank(int challengeId, String username) {
+        Board board = boards.get(challengeId);
+        return board == null ? 0 : board.rank(username);
+    }
+
+    /**
+     * Returns a participant's best attempt at a challenge.
+     *
+     * @param  challengeId   the ID of the challenge
+     * @param  username      the participant's username
+     * @return               the standing, or null if they have not completed an attempt
+     */
+    Standing standing(int challengeId, String username) {
+        Board board = boards.get(challengeId);
+        return board == null ? null : board.standing(username);
+    }
+
+    /**
+     * Returns the number of participants ranked at a challenge.
+     *
+     * @param  challengeId   the ID of the challenge
+     * @return               the number of standings
+     */
+    int size(int challengeId) {
+        Board board = boards.get(challengeId);
+        return board == null ? 0 : board.size();
+    }
+
+    /**
+     * Describes how much is ranked.
+     *
+     * @return          a one-line summary
+     */
+    String describe() {
+        int standings = 0;
+        for (Board board : boards.values()) {
+            standings += board.size();
+        }
+        return "challenges=" + boards.size() + ", standings=" + standings;
+    }
+
+    /**
+     * A participant's best attempt at a challenge.
+     */
+    static class Standing {
+        final String username;
+        final int score;
+        final long timeMillis;
+
+        Standing(String username, int score, long timeMillis) {
+            this.username = username;
+            this.score = score;
+            this.timeMillis = timeMillis;
+        }
+    }
+
+    /**
+     * The standings of one challenge: each participant's best, and the same standings in order.
+     */
+    private static class Board {
+        private final Map<String, Standing> best = new HashMap<>();
+        private final RankedList ranked = new RankedList();
+
+        synchronized boolean offer(Standing standing) {
+            Standing current = best.get(standing.username);
+            if (current != null) {
+                if (ORDER.compare(current, standing) <= 0) {
+                    return false;
+                }
+                ranked.remove(current);
+            }
+            ranked.insert(standing);
+            best.put(standing.username, standing);
+            return true;
+        }
+
+        synchronized List<Standing> top(int count) {
+            return ranked.first(count);
+        }
+
+        synchronized int rank(String username) {
+            Standing current = best.get(username);
+            return current == null ? 0 : ranked.rank(current);
+        }
+
+        synchronized Standing standing(String username) {
+            return best.get(username);
+        }
+
+        synchronized int size() {
+            return ranked.size;
+        }
+    }
+
+    /**
+     * A skip list in ORDER whose links also record how many entries they jump over, so the
+     * rank of an entry is the sum of the spans followed on the way to it.
+     */
+    private static class RankedList {
+        private static final int MAX_LEVEL = 32;
+
+        private final Node head = new Node(null, MAX_LEVEL);
+        private int level = 1;
+        private int size;
+
+        void insert(Standing standing) {
+            Node[] update = new Node[MAX_LEVEL];
+            int[] passed = new int[MAX_LEVEL];
+            Node node = head;
+            for (int i = level - 1; i >= 0; i--) {
+                passed[i] = i == level - 1 ? 0 : passed[i + 1];
+                while (node.next[i] != null && ORDER.compare(node.next[i].standing, standing) < 0) {
+                    passed[i] += node.span[i];
+                    node = node.next[i];
+                }
+                update[i] = node;
+            }
+            int height = randomLevel();
+            if (height > level) {
+                for (int i = level; i < height; i++) {
+                    passed[i] = 0;
+                    update[i] = head;
+                    head.span[i] = size;
+                }
+                level = height;
+            }
+            Node inserted = new Node(standing, height);
+            for (int i = 0; i < height; i++) {
+                inserted.next[i] = update[i].next[i];
+                update[i].next[i] = inserted;
+                inserted.span[i] = update[i].span[i] - (passed[0] - passed[i]);
+                update[i].span[i] = passed[0] - passed[i] + 1;
+            }
+            // Links above the new node now jump over one more entry
+            for (int i = height; i < level; i++) {
+                update[i].span[i]++;
+            }
+            size++;
+        }
+
+        void remove(Standing standing) {
+            Node[] update = new Node[MAX_LEVEL];
+            Node node = head;
+            for (int i = level - 1; i >= 0; i--) {
+                while (node.next[i] != null && ORDER.compare(node.next[i].standing, standing) < 0) {
+                    node = node.next[i];
+                }
+                update[i] = node;
+            }
+            Node removed = node.next[0];
+            if (removed == null || ORDER.compare(removed.standing, standing) != 0) {
+                return;
+            }
+            for (int i = 0; i < level; i++) {
+                if (update[i].next[i] == removed) {
+                    update[i].span[i] += removed.span[i] - 1;
+                    update[i].next[i] = removed.next[i];
+                } else {
+                    update[i].span[i]--;
+                }
+            }
+            while (level > 1 && head.next[level - 1] == null) {
+                level--;
+            }
+            size--;
+        }
+
+        int rank(Standing standing) {
+            int rank = 0;
+            Node node = head;
+            for (int i = level - 1; i >= 0; i--) {
+                while (node.next[i] != null && ORDER.compare(node.next[i].standing, standing) <= 0) {
+                    rank += node.span[i];
+                    node = node.next[i];
+                }
+                if (node.standing != null && ORDER.compare(node.standing, standing) == 0) {
+                    return rank;
+                }
+            }
+            return 0;
+        }
+
+        List<Standing> first(int count) {
+            List<Standing> standings = new ArrayList<>(Math.min(count, size));
+            for (Node node = head.next[0]; node != null && standings.size() < count; node = node.next[0]) {
+                standings.add(node.standing);
+            }
+            return standings;
+        }
+
+        private static int randomLevel() {
+            int height = 1;
+            // Each level holds about a quarter of the entries of the one below
+            while (height < MAX_LEVEL && ThreadLocalRandom.current().nextInt(4) == 0) {
+                height++;
+            }
+            return height;
+        }
+
+        private static class Node {
+            final Standing standing;
+            final Node[] next;
+            final int[] span;
+
+            Node(Standing standing, int height) {
+                this.standing = standing;
+                this.next = new Node[height];
+                this.span = new int[height];
+            }
+        }
+    }
+}
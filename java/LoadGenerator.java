@@ -0,0 +1,368 @@
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.sql.DataSource;
+
+/**
+ * Drives many simulated participants against a running server, to reproduce a challenge
+ * deadline stampede before it happens for real.
+ *
+ * Each virtual user opens its own connection and, LOAD_ITERATIONS times, logs in, lists the
+ * challenges and attempts LOAD_CHALLENGE, waiting an exponentially distributed think time
+ * with mean LOAD_THINK_MS before each step and answering correctly with probability
+ * LOAD_ACCURACY. Users start evenly spread over LOAD_RAMP_UP_SECONDS. At the end the
+ * throughput and latency percentiles of every command are printed.
+ *
+ * The users are LOAD_USER_PREFIX1 .. LOAD_USER_PREFIX<LOAD_USERS>, all with LOAD_PASSWORD.
+ * With LOAD_SEED=true they are created first, together with a school for them and a fresh
+ * challenge of LOAD_SEED_QUESTIONS questions, which replaces LOAD_CHALLENGE. The answer key
+ * is read from the DB_* database; LOAD_SMTP_PORT starts a FakeSmtpServer in this process
+ * for the server's report emails.
+ *
+ * Usage: java LoadGenerator
+ */
+public class LoadGenerator {
+    private static final String WRONG_ANSWER = "load-generator-wrong-answer";
+    private static final List<String> COMMANDS = Arrays.asList("connect", "login", "viewChallenges", "attemptChallenge", "answer");
+
+    private final String host;
+    private final int port;
+    private final int users;
+    private final int iterations;
+    private final String userPrefix;
+    private final String password;
+    private final long thinkMs;
+    private final double accuracy;
+    private final long rampUpMs;
+    private int challengeId;
+    // Question ID to correct answer; empty when the database cannot be reached
+    private final Map<Integer, String> answerKey = new ConcurrentHashMap<>();
+
+    private final Map<String, LatencyHistogram> latencies = new LinkedHashMap<>();
+    private final Map<String, AtomicLong> errors = new LinkedHashMap<>();
+    private final AtomicLong completedAttempts = new AtomicLong();
+    private final AtomicLong refusedAttempts = new AtomicLong();
+    private final AtomicLong failedUsers = new AtomicLong();
+    private final AtomicLong activeUsers = new AtomicLong();
+
+    LoadGenerator(String host, int port, int users, int iterations, String userPrefix, String password,
+                  int challengeId, long thinkMs, double accuracy, long rampUpMs) {
+        this.host = host;
+        this.port = port;
+        this.users = users;
+        this.iterations = iterations;
+        this.userPrefix = userPrefix;
+        this.password = password;
+        this.challengeId = challengeId;
+        this.thinkMs = thinkMs;
+        this.accuracy = accuracy;
+        this.rampUpMs = rampUpMs;
+        for (String command : COMMANDS) {
+            latencies.put(command, new LatencyHistogram());
+            errors.put(command, new AtomicLong());
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        LoadGenerator generator = new LoadGenerator(Server.get("LOAD_HOST", "localhost"),
+                Server.getInt("LOAD_PORT", 8001),
+                Server.getInt("LOAD_USERS", 100),
+                Server.getInt("LOAD_ITERATIONS", 1),
+                Server.get("LOAD_USER_PREFIX", "load_user_"),
+                Server.get("LOAD_PASSWORD", "load"),
+                Server.getInt("LOAD_CHALLENGE", 1),
+                Server.getInt("LOAD_THINK_MS", 500),
+                Double.parseDouble(Server.get("LOAD_ACCURACY", "0.7")),
+                TimeUnit.SECONDS.toMillis(Server.getInt("LOAD_RAMP_UP_SECONDS", 10)));
+
+        int smtpPort = Server.getInt("LOAD_SMTP_PORT", 0);
+        if (smtpPort > 0) {
+            FakeSmtpServer smtp = new FakeSmtpServer(smtpPort, Server.getInt("LOAD_SMTP_DELAY_MS", 0));
+            Thread thread = SessionExecutor.namedThreads("fake-smtp-").newThread(() -> {
+                try {
+                    smtp.serve();
+                } catch (IOException e) {
+                    System.out.println("Error starting the fake SMTP server: " + e.getMessage());
+                }
+            });
+            thread.start();
+        }
+
+        try {
+            Class.forName("com.mysql.cj.jdbc.Driver");
+            ConnectionPool dataSource = ConnectionPool.fromConfig();
+            if (Boolean.parseBoolean(Server.get("LOAD_SEED", "false"))) {
+                generator.seed(dataSource, Server.getInt("LOAD_SEED_QUESTIONS", 10));
+            }
+            generator.loadAnswerKey(dataSource);
+        } catch (ClassNotFoundException | SQLException e) {
+            System.out.println("Database unavailable, every answer will be wrong: " + e.getMessage());
+        }
+
+        generator.run(Server.getInt("LOAD_REPORT_INTERVAL", 10));
+        System.exit(0);
+    }
+
+    /**
+     * Creates the virtual users, a school for them and a new challenge they will attempt.
+     * Users that already exist are kept, so a seeded database can be reused.
+     *
+     * @param  dataSource   the server's database
+     * @param  questions    the number of questions of the new challenge
+     * @throws SQLException if the data cannot be written
+     */
+    void seed(DataSource dataSource, int questions) throws SQLException {
+        String schoolRegNumber = userPrefix + "school";
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "INSERT IGNORE INTO school_representatives (username, firstname, lastname, email, password, validated) VALUES (?, 'Load', 'Representative', ?, ?, TRUE)")) {
+                statement.setString(1, userPrefix + "rep");
+                statement.setString(2, userPrefix + "rep@example.com");
+                statement.setString(3, password);
+                statement.executeUpdate();
+            }
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "INSERT IGNORE INTO schools (name, district, school_registration_number, representative_email, representative_name) VALUES ('Load School', 'Load', ?, ?, ?)")) {
+                statement.setString(1, schoolRegNumber);
+                statement.setString(2, userPrefix + "rep@example.com");
+                statement.setString(3, userPrefix + "rep");
+                statement.executeUpdate();
+            }
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "INSERT IGNORE INTO participants (username, firstname, lastname, school_registration_number, email, date_of_birth, password) VALUES (?, 'Load', ?, ?, ?, ?, ?)")) {
+                for (int i = 1; i <= users; i++) {
+                    statement.setString(1, userPrefix + i);
+                    statement.setString(2, "User" + i);
+                    statement.setString(3, schoolRegNumber);
+                    statement.setString(4, userPrefix + i + "@example.com");
+                    statement.setDate(5, Date.valueOf("2010-01-01"));
+                    statement.setString(6, password);
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+
+            LocalDate today = LocalDate.now();
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "INSERT INTO challenges (name, start_date, end_date, duration, num_questions, description) VALUES (?, ?, ?, 60, ?, 'Created by the load generator')",
+                    Statement.RETURN_GENERATED_KEYS)) {
+                statement.setString(1, "Load test " + today);
+                statement.setDate(2, Date.valueOf(today));
+                statement.setDate(3, Date.valueOf(today.plusDays(30)));
+                statement.setInt(4, questions);
+                statement.executeUpdate();
+                ResultSet keys = statement.getGeneratedKeys();
+                keys.next();
+                challengeId = keys.getInt(1);
+            }
+            try (PreparedStatement question = connection.prepareStatement(
+                         "INSERT INTO questions (question_text, answer, marks) VALUES (?, ?, ?)", Statement.RETURN_GENERATED_KEYS);
+                 PreparedStatement link = connection.prepareStatement(
+                         "INSERT INTO challenge_questions (challenge_id, question_id) VALUES (?, ?)")) {
+                for (int i = 1; i <= questions; i++) {
+                    question.setString(1, "What is " + i + " + " + i + "?");
+                    question.setString(2, String.valueOf(i + i));
+                    question.setInt(3, 1 + i % 5);
+                    question.executeUpdate();
+                    ResultSet keys = question.getGeneratedKeys();
+                    keys.next();
+                    link.setInt(1, challengeId);
+                    link.setInt(2, keys.getInt(1));
+                    link.addBatch();
+                }
+                link.executeBatch();
+            }
+            connection.commit();
+        }
+        System.out.println("Seeded " + users + " participants and challenge " + challengeId + " with " + questions + " questions");
+    }
+
+    /**
+     * Reads the correct answers to the questions of the challenge.
+     *
+     * @param  dataSource   the server's database
+     * @throws SQLException if the questions cannot be read
+     */
+    void loadAnswerKey(DataSource dataSource) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "SELECT q.id, q.answer FROM challenge_questions cq JOIN questions q ON q.id = cq.question_id WHERE cq.challenge_id = ?")) {
+            statement.setInt(1, challengeId);
+            ResultSet resultSet = statement.executeQuery();
+            while (resultSet.next()) {
+                answerKey.put(resultSet.getInt("id"), resultSet.getString("answer"));
+            }
+        }
+    }
+
+    /**
+     * Runs every virtual user to the end and prints the results.
+     *
+     * @param  reportIntervalSeconds   how often to print progress, or 0 for none
+     * @throws InterruptedException if interrupted while waiting for the users
+     */
+    void run(int reportIntervalSeconds) throws InterruptedException {
+        System.out.println("Starting " + users + " users, " + iterations + " iteration(s) each, against " + host + ":" + port +
+                           ", challenge " + challengeId + ", " + answerKey.size() + " known answers");
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(SessionExecutor.namedThreads("load-report-"));
+        if (reportIntervalSeconds > 0) {
+            reporter.scheduleAtFixedRate(() -> System.out.println("Progress: activeUsers=" + activeUsers.get() +
+                    ", completedAttempts=" + completedAttempts.get() + ", answers=" + latencies.get("answer").count()),
+                    reportIntervalSeconds, reportIntervalSeconds, TimeUnit.SECONDS);
+        }
+
+        CountDownLatch finished = new CountDownLatch(users);
+        ThreadFactory threads = SessionExecutor.namedThreads("load-user-");
+        long started = System.nanoTime();
+        for (int i = 1; i <= users; i++) {
+            String username = userPrefix + i;
+            long delayMs = rampUpMs * (i - 1) / users;
+            threads.newThread(() -> {
+                try {
+                    Thread.sleep(delayMs);
+                    activeUsers.incrementAndGet();
+                    simulate(username);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    activeUsers.decrementAndGet();
+                    finished.countDown();
+                }
+            }).start();
+        }
+        finished.await();
+        reporter.shutdownNow();
+        report(System.nanoTime() - started);
+    }
+
+    private void simulate(String username) throws InterruptedException {
+        ProtocolClient connection;
+        try {
+            connection = timed("connect", () -> new ProtocolClient(host, port));
+        } catch (IOException e) {
+            failedUsers.incrementAndGet();
+            System.out.println("Virtual user " + username + " could not connect: " + e.getMessage());
+            return;
+        }
+        try (ProtocolClient server = connection) {
+            for (int i = 0; i < iterations; i++) {
+                if (!attempt(server, username)) {
+                    failedUsers.incrementAndGet();
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            failedUsers.incrementAndGet();
+            System.out.println("Virtual user " + username + " stopped: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Runs one login, listing and attempt.
+     *
+     * @return          false if the user cannot go on
+     */
+    private boolean attempt(ProtocolClient server, String username) throws IOException, InterruptedException {
+        think();
+        ProtocolClient.Reply reply = timed("login", () -> server.exchange(new String[] {"login", "participant"}, Arrays.asList(username, password)));
+        if (!reply.has("Login successful!")) {
+            // An ERROR reply has already been counted
+            if (!reply.isError()) {
+                errors.get("login").incrementAndGet();
+            }
+            return false;
+        }
+
+        think();
+        timed("viewChallenges", () -> server.request("viewChallenges"));
+
+        think();
+        reply = timed("attemptChallenge", () -> server.request("attemptChallenge", username, String.valueOf(challengeId)));
+        if (reply.lines.contains("Max Attempts Reached!")) {
+            refusedAttempts.incrementAndGet();
+            return true;
+        }
+        while (reply.awaitingInput()) {
+            String answer = answer(reply);
+            think();
+            reply = timed("answer", () -> server.input(answer));
+        }
+        if (reply.has("Challenge completed")) {
+            completedAttempts.incrementAndGet();
+        }
+        return true;
+    }
+
+    private String answer(ProtocolClient.Reply question) {
+        String correct = null;
+        for (String line : question.lines) {
+            if (line.startsWith("Question ID: ")) {
+                correct = answerKey.get(Integer.parseInt(line.substring("Question ID: ".length()).trim()));
+            }
+        }
+        if (correct != null && ThreadLocalRandom.current().nextDouble() < accuracy) {
+            return correct;
+        }
+        return WRONG_ANSWER;
+    }
+
+    private <T> T timed(String command, Exchange<T> exchange) throws IOException {
+        long started = System.nanoTime();
+        try {
+            T result = exchange.run();
+            if (result instanceof ProtocolClient.Reply && ((ProtocolClient.Reply) result).isError()) {
+                errors.get(command).incrementAndGet();
+            }
+            return result;
+        } catch (IOException e) {
+            errors.get(command).incrementAndGet();
+            throw e;
+        } finally {
+            latencies.get(command).record(System.nanoTime() - started);
+        }
+    }
+
+    private void think() throws InterruptedException {
+        if (thinkMs > 0) {
+            // Exponential think times, capped so a single unlucky draw cannot stall a user
+            double draw = -Math.log(1 - ThreadLocalRandom.current().nextDouble());
+            Thread.sleep((long) (thinkMs * Math.min(draw, 10)));
+        }
+    }
+
+    private void report(long elapsedNanos) {
+        double seconds = Math.max(1e-9, elapsedNanos / 1e9);
+        System.out.println("Finished in " + String.format("%.1f", seconds) + "s: completedAttempts=" + completedAttempts.get() +
+                           ", refusedAttempts=" + refusedAttempts.get() + ", failedUsers=" + failedUsers.get());
+        for (String command : COMMANDS) {
+            LatencyHistogram histogram = latencies.get(command);
+            System.out.println("  " + command + ": " + String.format("%.1f", histogram.count() / seconds) + "/s, errors=" +
+                               errors.get(command).get() + ", " + histogram.describe());
+        }
+    }
+
+    /**
+     * One timed step: connecting, or a request and the wait for its reply.
+     */
+    private interface Exchange<T> {
+        T run() throws IOException;
+    }
+}
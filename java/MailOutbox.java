@@ -0,0 +1,447 @@
+import java.io.IOException;
+import java.net.URLConnection;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.activation.DataHandler;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Multipart;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeBodyPart;
+import javax.mail.internet.MimeMessage;
+import javax.mail.internet.MimeMultipart;
+import javax.mail.util.ByteArrayDataSource;
+import javax.sql.DataSource;
+
+/**
+ * A durable, asynchronous email outbox.
+ *
+ * Handlers add messages to the email_outbox table with the same connection, and in the same
+ * transaction, as the business write that caused them, so a message is stored if and only if
+ * the change it reports is. MAIL_WORKERS background workers claim due messages and send them,
+ * each over its own long-lived authenticated SMTP connection. A failed send is retried with
+ * exponential backoff until MAIL_MAX_ATTEMPTS is reached, after which the message is marked
+ * failed. Setting EMAIL_SECURITY=none and pointing EMAIL_HOST/EMAIL_PORT at FakeSmtpServer
+ * sends everything to a local listener.
+ */
+class MailOutbox {
+    private static final String INSERT_QUERY = "INSERT INTO email_outbox (recipient, subject, body, attachment_path, attachment_name, attachment) VALUES (?, ?, ?, ?, ?, ?)";
+    private static final String HOLD_QUERY = "INSERT INTO email_outbox (recipient, subject, body, status) VALUES (?, ?, ?, 'held')";
+    static final String CLAIM_QUERY = "SELECT id, recipient, subject, body, attachment_path, attachment_name, attachment, attempts FROM email_outbox " +
+                                      "WHERE status = 'pending' AND next_attempt_at <= NOW() ORDER BY id LIMIT ? FOR UPDATE SKIP LOCKED";
+    private static final String MARK_SENDING_QUERY = "UPDATE email_outbox SET status = 'sending', attempts = attempts + 1 WHERE id = ?";
+    private static final String MARK_SENT_QUERY = "UPDATE email_outbox SET status = 'sent', last_error = NULL, attachment = NULL WHERE id = ?";
+    private static final String MARK_RETRY_QUERY = "UPDATE email_outbox SET status = ?, last_error = ?, next_attempt_at = NOW() + INTERVAL ? SECOND WHERE id = ?";
+    private static final String RECOVER_QUERY = "UPDATE email_outbox SET status = 'pending' WHERE status = 'sending'";
+    // A connection idle for longer than this is checked with a NOOP before it is used again
+    private static final long VALIDATE_AFTER_IDLE_MS = 5000;
+
+    private final DataSource dataSource;
+    private final Session session;
+    private final String sender;
+    private final int workerCount;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final int backoffSeconds;
+    private final long pollIntervalMs;
+    private final ExecutorService workers;
+    private final Semaphore wakeUps = new Semaphore(0);
+
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final Metrics metrics = Server.getMetrics();
+
+    MailOutbox(DataSource dataSource, Session session, String sender, int workerCount, int batchSize, int maxAttempts, int backoffSeconds, long pollIntervalMs) {
+        this.dataSource = dataSource;
+        this.session = session;
+        this.sender = sender;
+        this.workerCount = workerCount;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.backoffSeconds = backoffSeconds;
+        this.pollIntervalMs = pollIntervalMs;
+        this.workers = Executors.newFixedThreadPool(workerCount, SessionExecutor.namedThreads("mail-"));
+    }
+
+    /**
+     * Creates an outbox from the EMAIL_* and MAIL_* settings.
+     *
+     * @param  dataSource   the pool to claim and update messages with
+     * @return              the outbox, not yet started
+     */
+    static MailOutbox fromConfig(DataSource dataSource) {
+        String user = Server.get("EMAIL_USER");
+        String pass = Server.get("EMAIL_PASS");
+        String port = Server.get("EMAIL_PORT", "465");
+        String security = Server.get("EMAIL_SECURITY", "ssl");
+
+        Properties properties = new Properties();
+        properties.put("mail.smtp.host", Server.get("EMAIL_HOST"));
+        properties.put("mail.smtp.port", port);
+        properties.put("mail.smtp.auth", Server.get("EMAIL_AUTH", "true"));
+        properties.put("mail.smtp.connectiontimeout", "10000");
+        properties.put("mail.smtp.timeout", "30000");
+        if ("ssl".equals(security)) {
+            properties.put("mail.smtp.socketFactory.port", port);
+            properties.put("mail.smtp.socketFactory.class", "javax.net.ssl.SSLSocketFactory");
+        } else if ("starttls".equals(security)) {
+            properties.put("mail.smtp.starttls.enable", "true");
+        }
+
+        Session session = Session.getInstance(properties,
+            new javax.mail.Authenticator() {
+                protected javax.mail.PasswordAuthentication getPasswordAuthentication() {
+                    return new javax.mail.PasswordAuthentication(user, pass);
+                }
+            });
+
+        return new MailOutbox(dataSource, session, user,
+                Server.getInt("MAIL_WORKERS", 2),
+                Server.getInt("MAIL_BATCH_SIZE", 20),
+                Server.getInt("MAIL_MAX_ATTEMPTS", 8),
+                Server.getInt("MAIL_BACKOFF_SECONDS", 30),
+                Server.getInt("MAIL_POLL_INTERVAL_MS", 2000));
+    }
+
+    /**
+     * Requeues messages left half-sent by a previous run and starts the send workers.
+     *
+     * @throws SQLException if the outbox table cannot be updated
+     */
+    void start() throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(RECOVER_QUERY)) {
+            int recovered = statement.executeUpdate();
+            if (recovered > 0) {
+                System.out.println("Requeued " + recovered + " emails interrupted during the last run");
+            }
+        }
+        for (int i = 0; i < workerCount; i++) {
+            workers.execute(new Worker());
+        }
+    }
+
+    /**
+     * Stores a message for sending. Uses the caller's connection so that the message commits
+     * or rolls back together with the caller's transaction; callers in a transaction should
+     * call wakeUp() once they have committed.
+     *
+     * @param  connection      the connection of the business write
+     * @param  recipient       the email address of the recipient
+     * @param  subject         the subject of the email
+     * @param  body            the body of the email message
+     * @param  attachmentPath  the path of a file to attach, or null
+     * @throws SQLException    if the message cannot be stored
+     */
+    void enqueue(Connection connection, String recipient, String subject, String body, String attachmentPath) throws SQLException {
+        insert(connection, recipient, subject, body, attachmentPath, null, null);
+    }
+
+    /**
+     * Stores a message whose attachment is kept in the outbox row itself, so nothing is read
+     * back from disk when it is sent. The attachment is dropped from the row once sent.
+     *
+     * @param  connection      the connection of the business write
+     * @param  recipient       the email address of the recipient
+     * @param  subject         the subject of the email
+     * @param  body            the body of the email message
+     * @param  attachmentName  the file name the recipient sees
+     * @param  attachment      the content of the attachment
+     * @throws SQLException    if the message cannot be stored
+     */
+    void enqueue(Connection connection, String recipient, String subject, String body, String attachmentName, byte[] attachment) throws SQLException {
+        insert(connection, recipient, subject, body, null, attachmentName, attachment);
+    }
+
+    private void insert(Connection connection, String recipient, String subject, String body,
+                        String attachmentPath, String attachmentName, byte[] attachment) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(INSERT_QUERY)) {
+            statement.setString(1, recipient);
+            statement.setString(2, subject);
+            statement.setString(3, body);
+            statement.setString(4, attachmentPath);
+            statement.setString(5, attachmentName);
+            statement.setBytes(6, attachment);
+            statement.executeUpdate();
+        }
+        if (connection.getAutoCommit()) {
+            wakeUp();
+        }
+    }
+
+    /**
+     * Stores a message that is not sent by the workers but waits to be merged into a digest.
+     *
+     * @param  connection      the connection of the business write
+     * @param  recipient       the email address of the recipient
+     * @param  subject         the subject of the email
+     * @param  body            the item to include in the digest
+     * @throws SQLException    if the message cannot be stored
+     */
+    void hold(Connection connection, String recipient, String subject, String body) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(HOLD_QUERY)) {
+            statement.setString(1, recipient);
+            statement.setString(2, subject);
+            statement.setString(3, body);
+            statement.executeUpdate();
+        }
+    }
+
+    /**
+     * Tells an idle worker that new messages have been committed.
+     */
+    void wakeUp() {
+        wakeUps.release();
+    }
+
+    /**
+     * Logs describe() every intervalSeconds seconds.
+     *
+     * @param  intervalSeconds   the reporting interval, or 0 to disable
+     */
+    void startReporting(int intervalSeconds) {
+        if (intervalSeconds <= 0) {
+            return;
+        }
+        Executors.newSingleThreadScheduledExecutor(SessionExecutor.namedThreads("mail-outbox-stats-")).scheduleAtFixedRate(
+                () -> System.out.println("Mail outbox: " + describe()), intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Describes the send counters.
+     *
+     * @return          a one-line summary for logging
+     */
+    String describe() {
+        return "sent=" + sent.get() + ", retried=" + retried.get() + ", failed=" + failed.get();
+    }
+
+    /**
+     * Claims due messages in one short transaction, marking them as being sent.
+     *
+     * @return          the claimed messages
+     * @throws SQLException if the outbox cannot be read
+     */
+    private List<OutboxMessage> claim() throws SQLException {
+        List<OutboxMessage> messages = new ArrayList<>();
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement statement = connection.prepareStatement(CLAIM_QUERY)) {
+                statement.setInt(1, batchSize);
+                ResultSet resultSet = statement.executeQuery();
+                while (resultSet.next()) {
+                    messages.add(new OutboxMessage(resultSet.getLong("id"), resultSet.getString("recipient"),
+                            resultSet.getString("subject"), resultSet.getString("body"),
+                            resultSet.getString("attachment_path"), resultSet.getString("attachment_name"),
+                            resultSet.getBytes("attachment"), resultSet.getInt("attempts") + 1));
+                }
+            }
+            try (PreparedStatement statement = connection.prepareStatement(MARK_SENDING_QUERY)) {
+                for (OutboxMessage message : messages) {
+                    statement.setLong(1, message.id);
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+            connection.commit();
+        }
+        return messages;
+    }
+
+    private void markSent(OutboxMessage message) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(MARK_SENT_QUERY)) {
+            statement.setLong(1, message.id);
+            statement.executeUpdate();
+        }
+        sent.incrementAndGet();
+    }
+
+    private void markFailed(OutboxMessage message, Exception cause) throws SQLException {
+        boolean giveUp = message.attempt >= maxAttempts;
+        long delaySeconds = (long) backoffSeconds << Math.min(message.attempt - 1, 16);
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(MARK_RETRY_QUERY)) {
+            statement.setString(1, giveUp ? "failed" : "pending");
+            statement.setString(2, String.valueOf(cause.getMessage()));
+            statement.setLong(3, delaySeconds);
+            statement.setLong(4, message.id);
+            statement.executeUpdate();
+        }
+        if (giveUp) {
+            failed.incrementAndGet();
+            System.out.println("Giving up on email " + message.id + " to " + message.recipient + ": " + cause.getMessage());
+        } else {
+            retried.incrementAndGet();
+            System.out.println("Email " + message.id + " to " + message.recipient + " failed, retrying in " + delaySeconds + " seconds: " + cause.getMessage());
+        }
+    }
+
+    /**
+     * Builds the MIME message for an outbox row.
+     *
+     * @param  message   the outbox row
+     * @return           the message ready to send
+     * @throws MessagingException if the message cannot be built
+     * @throws IOException        if the attachment cannot be read
+     */
+    private Message buildMessage(OutboxMessage message) throws MessagingException, IOException {
+        MimeMessage mimeMessage = new MimeMessage(session);
+        mimeMessage.setFrom(new InternetAddress(sender));
+        mimeMessage.setRecipients(Message.RecipientType.TO, InternetAddress.parse(message.recipient));
+        mimeMessage.setSubject(message.subject);
+
+        if (message.attachmentPath == null && message.attachment == null) {
+            mimeMessage.setText(message.body);
+        } else {
+            MimeBodyPart messageBodyPart = new MimeBodyPart();
+            messageBodyPart.setText(message.body);
+
+            MimeBodyPart attachmentBodyPart = new MimeBodyPart();
+            if (message.attachment != null) {
+                String contentType = URLConnection.guessContentTypeFromName(message.attachmentName);
+                attachmentBodyPart.setDataHandler(new DataHandler(new ByteArrayDataSource(message.attachment,
+                        contentType != null ? contentType : "application/octet-stream")));
+                attachmentBodyPart.setFileName(message.attachmentName);
+            } else {
+                attachmentBodyPart.attachFile(message.attachmentPath);
+            }
+
+            Multipart multipart = new MimeMultipart();
+            multipart.addBodyPart(messageBodyPart);
+            multipart.addBodyPart(attachmentBodyPart);
+            mimeMessage.setContent(multipart);
+        }
+        mimeMessage.saveChanges();
+        return mimeMessage;
+    }
+
+    /**
+     * A row of the outbox claimed for sending.
+     */
+    private static class OutboxMessage {
+        private final long id;
+        private final String recipient;
+        private final String subject;
+        private final String body;
+        private final String attachmentPath;
+        private final String attachmentName;
+        private final byte[] attachment;
+        private final int attempt;
+
+        OutboxMessage(long id, String recipient, String subject, String body, String attachmentPath,
+                      String attachmentName, byte[] attachment, int attempt) {
+            this.id = id;
+            this.recipient = recipient;
+            this.subject = subject;
+            this.body = body;
+            this.attachmentPath = attachmentPath;
+            this.attachmentName = attachmentName;
+            this.attachment = attachment;
+            this.attempt = attempt;
+        }
+    }
+
+    /**
+     * A send worker owning one SMTP connection, which it keeps open between messages and
+     * reopens when the server drops it.
+     */
+    private class Worker implements Runnable {
+        private Transport transport;
+        private long lastUsed;
+
+        @Override
+        public void run() {
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    List<OutboxMessage> messages = claim();
+                    for (OutboxMessage message : messages) {
+                        deliver(message);
+                    }
+                    if (messages.size() < batchSize) {
+                        wakeUps.tryAcquire(pollIntervalMs, TimeUnit.MILLISECONDS);
+                        wakeUps.drainPermits();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (SQLException e) {
+                    System.out.println("Error reading email outbox: " + e.getMessage());
+                    sleepQuietly(pollIntervalMs);
+                } catch (RuntimeException e) {
+                    // Keep the worker alive; the outbox would otherwise stop sending for good
+                    System.out.println("Error in email outbox worker: " + e.getMessage());
+                    e.printStackTrace();
+                    closeTransport();
+                    sleepQuietly(pollIntervalMs);
+                }
+            }
+            closeTransport();
+        }
+
+        private void deliver(OutboxMessage message) throws SQLException {
+            try {
+                Message mimeMessage = buildMessage(message);
+                // Any failure goes to markFailed and its backoff. Retrying at once could send the
+                // email twice if it failed after the server accepted the message.
+                send(mimeMessage);
+                markSent(message);
+                System.out.println("Email notification sent successfully to " + message.recipient);
+            } catch (MessagingException | IOException | RuntimeException e) {
+                // A RuntimeException from the mail library or a bad row is a failed send too, so
+                // the row goes back to pending rather than staying in 'sending' until a restart
+                closeTransport();
+                markFailed(message, e);
+            }
+        }
+
+        private void send(Message message) throws MessagingException {
+            long started = System.nanoTime();
+            try {
+                // The server may have closed a connection that sat idle; check it before use
+                if (transport != null && System.currentTimeMillis() - lastUsed > VALIDATE_AFTER_IDLE_MS && !transport.isConnected()) {
+                    closeTransport();
+                }
+                if (transport == null) {
+                    transport = session.getTransport("smtp");
+                    transport.connect();
+                }
+                transport.sendMessage(message, message.getAllRecipients());
+                lastUsed = System.currentTimeMillis();
+            } finally {
+                metrics.recordSmtpSend(System.nanoTime() - started);
+            }
+        }
+
+        private void closeTransport() {
+            if (transport != null) {
+                try {
+                    transport.close();
+                } catch (MessagingException e) {
+                    System.out.println("Error closing SMTP connection: " + e.getMessage());
+                }
+                transport = null;
+            }
+        }
+
+        private void sleepQuietly(long millis) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency histograms and gauges for the server, published in the Prometheus text format.
+ *
+ * Commands are timed from the line that starts them ("request") and from each line that
+ * answers their prompts ("input"), so an attempt shows both how long attemptChallenge takes
+ * and how long each answer takes. Database statements, SMTP sends and PDF renders are timed
+ * where they happen. Recording is a few atomic increments and never blocks; the histograms
+ * cover everything since the server started.
+ *
+ * The text is served on http://127.0.0.1:METRICS_PORT/metrics when METRICS_PORT is set, and
+ * returned by the metrics command to a logged-in school representative.
+ */
+class Metrics {
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final Map<String, LatencyHistogram> requests = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> inputs = new ConcurrentHashMap<>();
+    private final LatencyHistogram statements = new LatencyHistogram();
+    private final LatencyHistogram smtpSends = new LatencyHistogram();
+    private final LatencyHistogram pdfRenders = new LatencyHistogram();
+    private final AtomicLong activeConnections = new AtomicLong();
+    private final AtomicLong attemptsInFlight = new AtomicLong();
+
+    /**
+     * Records the time taken by the line that started a command.
+     *
+     * @param  command  the command, or "unknown" for lines that are not one
+     * @param  nanos    the time taken
+     */
+    void recordRequest(String command, long nanos) {
+        requests.computeIfAbsent(command, key -> new LatencyHistogram()).record(nanos);
+    }
+
+    /**
+     * Records the time taken by a line answering a command's prompt.
+     *
+     * @param  command  the command that prompted for the line
+     * @param  nanos    the time taken
+     */
+    void recordInput(String command, long nanos) {
+        inputs.computeIfAbsent(command, key -> new LatencyHistogram()).record(nanos);
+    }
+
+    void recordStatement(long nanos) {
+        statements.record(nanos);
+    }
+
+    void recordSmtpSend(long nanos) {
+        smtpSends.record(nanos);
+    }
+
+    void recordPdfRender(long nanos) {
+        pdfRenders.record(nanos);
+    }
+
+    void connectionOpened() {
+        activeConnections.incrementAndGet();
+    }
+
+    void connectionClosed() {
+        activeConnections.decrementAndGet();
+    }
+
+    void attemptStarted() {
+        attemptsInFlight.incrementAndGet();
+    }
+
+    void attemptFinished() {
+        attemptsInFlight.decrementAndGet();
+    }
+
+    /**
+     * Serves the metrics over HTTP on the loopback interface.
+     *
+     * @param  port   the port, or 0 to disable the endpoint
+     * @throws IOException if the port cannot be bound
+     */
+    void startHttp(int port) throws IOException {
+        if (port <= 0) {
+            return;
+        }
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/metrics", exchange -> {
+            byte[] body = render().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.setExecutor(Executors.newSingleThreadExecutor(SessionExecutor.namedThreads("metrics-http-")));
+        server.start();
+        System.out.println("Metrics are served on http://127.0.0.1:" + port + "/metrics");
+    }
+
+    /**
+     * Renders every metric in the Prometheus text exposition format.
+     *
+     * @return          the metrics, one sample per line
+     */
+    String render() {
+        StringBuilder out = new StringBuilder();
+        header(out, "iryn_command_duration_seconds", "summary", "Time to handle a command line, by command and by phase: the request or an input answering its prompt.");
+        for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<>(requests).entrySet()) {
+            summary(out, "iryn_command_duration_seconds", "command=\"" + entry.getKey() + "\",phase=\"request\"", entry.getValue());
+        }
+        for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<>(inputs).entrySet()) {
+            summary(out, "iryn_command_duration_seconds", "command=\"" + entry.getKey() + "\",phase=\"input\"", entry.getValue());
+        }
+        header(out, "iryn_db_statement_duration_seconds", "summary", "Time to execute a prepared statement.");
+        summary(out, "iryn_db_statement_duration_seconds", "", statements);
+        header(out, "iryn_smtp_send_duration_seconds", "summary", "Time to hand an email to the SMTP server, including any reconnect.");
+        summary(out, "iryn_smtp_send_duration_seconds", "", smtpSends);
+        header(out, "iryn_pdf_render_duration_seconds", "summary", "Time to render and store a challenge report.");
+        summary(out, "iryn_pdf_render_duration_seconds", "", pdfRenders);
+        header(out, "iryn_active_connections", "gauge", "Client connections currently open.");
+        out.append("iryn_active_connections ").append(activeConnections.get()).append('\n');
+        header(out, "iryn_attempts_in_flight", "gauge", "Challenge attempts started and not yet completed or abandoned.");
+        out.append("iryn_attempts_in_flight ").append(attemptsInFlight.get()).append('\n');
+        return out.toString();
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void summary(StringBuilder out, String name, String labels, LatencyHistogram histogram) {
+        String separator = labels.isEmpty() ? "" : ",";
+        for (double quantile : QUANTILES) {
+            out.append(name).append('{').append(labels).append(separator).append("quantile=\"").append(quantile).append("\"} ")
+               .append(seconds(histogram.percentileMicros(quantile))).append('\n');
+        }
+        String suffix = labels.isEmpty() ? "" : "{" + labels + "}";
+        out.append(name).append("_sum").append(suffix).append(' ').append(seconds(histogram.totalMicros())).append('\n');
+        out.append(name).append("_count").append(suffix).append(' ').append(histogram.count()).append('\n');
+    }
+
+    private static String seconds(long micros) {
+        return String.valueOf(micros / 1e6);
+    }
+}
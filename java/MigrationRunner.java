@@ -0,0 +1,252 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.sql.DataSource;
+
+/**
+ * Brings the database schema up to date from the versioned scripts in MIGRATIONS_DIR.
+ *
+ * Scripts are named V<version>__<description>.sql and run in version order. Each applied
+ * script is recorded in schema_migrations with a SHA-256 checksum, and startup stops if an
+ * applied script has since been edited. A named database lock keeps two servers starting at
+ * once from applying the same script twice.
+ *
+ * The plan check runs EXPLAIN on the queries the server runs per request and reports any that
+ * scan a whole table without using an index, whatever the table's size, so an unindexed query
+ * is caught on a fresh or staging schema before it meets production data. The server runs the
+ * check at startup as set by MIGRATIONS_CHECK_PLANS: "fail" (the default) refuses to start,
+ * "warn" only logs the findings and "off" skips it. Run "java MigrationRunner" to migrate and
+ * check; it exits with status 1 when a check fails, so it can gate a deployment.
+ */
+class MigrationRunner {
+    private static final String HISTORY_TABLE_QUERY = "CREATE TABLE IF NOT EXISTS schema_migrations (" +
+                                                      "version INT PRIMARY KEY, " +
+                                                      "description VARCHAR(255) NOT NULL, " +
+                                                      "checksum CHAR(64) NOT NULL, " +
+                                                      "applied_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP)";
+    private static final String APPLIED_QUERY = "SELECT version, checksum FROM schema_migrations";
+    private static final String RECORD_QUERY = "INSERT INTO schema_migrations (version, description, checksum) VALUES (?, ?, ?)";
+    private static final String LOCK_QUERY = "SELECT GET_LOCK('schema_migrations', 60)";
+    private static final String UNLOCK_QUERY = "SELECT RELEASE_LOCK('schema_migrations')";
+
+    private final DataSource dataSource;
+    private final File directory;
+
+    MigrationRunner(DataSource dataSource, File directory) {
+        this.dataSource = dataSource;
+        this.directory = directory;
+    }
+
+    /**
+     * Creates a runner for the scripts in MIGRATIONS_DIR.
+     *
+     * @param  dataSource   the pool to migrate with
+     * @return              the runner
+     */
+    static MigrationRunner fromConfig(DataSource dataSource) {
+        return new MigrationRunner(dataSource, new File(Server.get("MIGRATIONS_DIR", "migrations")));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Class.forName("com.mysql.cj.jdbc.Driver");
+        ConnectionPool pool = ConnectionPool.fromConfig();
+        MigrationRunner runner = fromConfig(pool);
+        runner.migrate();
+        List<String> problems = runner.verifyPlans();
+        for (String problem : problems) {
+            System.out.println("Plan check failed: " + problem);
+        }
+        System.out.println(problems.isEmpty() ? "All query plans use indexes" : problems.size() + " queries scan whole tables");
+        System.exit(problems.isEmpty() ? 0 : 1);
+    }
+
+    /**
+     * Applies every script that has not been applied yet.
+     *
+     * @throws SQLException if a script fails or an applied script was changed
+     * @throws IOException  if a script cannot be read
+     */
+    void migrate() throws SQLException, IOException {
+        List<Migration> migrations = load();
+        try (Connection connection = dataSource.getConnection()) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute(HISTORY_TABLE_QUERY);
+                statement.execute(LOCK_QUERY);
+            }
+            try {
+                Map<Integer, String> applied = new HashMap<>();
+                try (PreparedStatement statement = connection.prepareStatement(APPLIED_QUERY)) {
+                    ResultSet resultSet = statement.executeQuery();
+                    while (resultSet.next()) {
+                        applied.put(resultSet.getInt("version"), resultSet.getString("checksum"));
+                    }
+                }
+                for (Migration migration : migrations) {
+                    String checksum = applied.get(migration.version);
+                    if (checksum == null) {
+                        apply(connection, migration);
+                    } else if (!checksum.equals(migration.checksum)) {
+                        throw new SQLException("Migration " + migration.file.getName() + " was changed after it was applied");
+                    }
+                }
+            } finally {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute(UNLOCK_QUERY);
+                }
+            }
+        }
+    }
+
+    private void apply(Connection connection, Migration migration) throws SQLException {
+        System.out.println("Applying migration " + migration.file.getName());
+        // MySQL commits DDL implicitly, so a failed script is fixed forward rather than rolled back
+        try (Statement statement = connection.createStatement()) {
+            for (String sql : migration.statements) {
+                statement.execute(sql);
+            }
+        }
+        try (PreparedStatement statement = connection.prepareStatement(RECORD_QUERY)) {
+            statement.setInt(1, migration.version);
+            statement.setString(2, migration.description);
+            statement.setString(3, migration.checksum);
+            statement.executeUpdate();
+        }
+    }
+
+    private List<Migration> load() throws IOException {
+        File[] files = directory.listFiles((dir, name) -> name.matches("V\\d+__.+\\.sql"));
+        if (files == null) {
+            throw new IOException("Migrations directory not found: " + directory.getAbsolutePath());
+        }
+        List<Migration> migrations = new ArrayList<>();
+        for (File file : files) {
+            migrations.add(new Migration(file));
+        }
+        migrations.sort((a, b) -> Integer.compare(a.version, b.version));
+        return migrations;
+    }
+
+    /**
+     * Runs EXPLAIN on the per-request queries and reports those that read a whole table
+     * without an index, however few rows it holds.
+     *
+     * @return              one description per offending query, empty if all plans use indexes
+     * @throws SQLException if a query cannot be explained
+     */
+    List<String> verifyPlans() throws SQLException {
+        List<PlanCheck> checks = Arrays.asList(
+                new PlanCheck("participant login", ClientHandler.PARTICIPANT_LOGIN_QUERY, "user", "secret"),
+                new PlanCheck("representative login", ClientHandler.REPRESENTATIVE_LOGIN_QUERY, "user", "secret"),
+                new PlanCheck("participant id", ClientHandler.PARTICIPANT_ID_QUERY, "user"),
+                new PlanCheck("participant email", ClientHandler.PARTICIPANT_EMAIL_QUERY, "user"),
+                new PlanCheck("applicant email", ClientHandler.APPLICANT_EMAIL_QUERY, "user"),
+                new PlanCheck("representative email", ClientHandler.REPRESENTATIVE_EMAIL_BY_USERNAME_QUERY, "user"),
+                new PlanCheck("school representative", ClientHandler.REPRESENTATIVE_EMAIL_QUERY, "REG001"),
+                new PlanCheck("rejected applicant", ClientHandler.REJECTED_APPLICANT_QUERY, "user"),
+                new PlanCheck("claim attempt", ClientHandler.CLAIM_ATTEMPT_QUERY, 1, 1, 3),
+                new PlanCheck("last attempt number", ClientHandler.LAST_ATTEMPT_NUMBER_QUERY, 1, 1),
+                new PlanCheck("applicants page", ClientHandler.APPLICANTS_PAGE_QUERY, "user", "", 50),
+                new PlanCheck("challenge questions", QuestionBank.LOAD_QUERY, 1),
+                new PlanCheck("open challenges", ChallengeListCache.LIST_QUERY),
+                new PlanCheck("outbox claim", MailOutbox.CLAIM_QUERY, 20),
+                new PlanCheck("digest due", ConfirmationDigest.DUE_QUERY, 25, 300));
+
+        List<String> problems = new ArrayList<>();
+        try (Connection connection = dataSource.getConnection()) {
+            for (PlanCheck check : checks) {
+                try (PreparedStatement statement = connection.prepareStatement("EXPLAIN " + check.sql)) {
+                    for (int i = 0; i < check.parameters.length; i++) {
+                        statement.setObject(i + 1, check.parameters[i]);
+                    }
+                    ResultSet resultSet = statement.executeQuery();
+                    while (resultSet.next()) {
+                        String table = resultSet.getString("table");
+                        boolean unindexed = resultSet.getString("possible_keys") == null || resultSet.getString("key") == null;
+                        if ("ALL".equals(resultSet.getString("type")) && table != null && unindexed) {
+                            problems.add(check.name + " scans " + table + " without an index: " + check.sql);
+                        }
+                    }
+                }
+            }
+        }
+        return problems;
+    }
+
+    /**
+     * A migration script, split into its statements.
+     */
+    private static class Migration {
+        final File file;
+        final int version;
+        final String description;
+        final String checksum;
+        final List<String> statements = new ArrayList<>();
+
+        Migration(File file) throws IOException {
+            this.file = file;
+            String name = file.getName();
+            this.version = Integer.parseInt(name.substring(1, name.indexOf("__")));
+            this.description = name.substring(name.indexOf("__") + 2, name.length() - ".sql".length()).replace('_', ' ');
+            byte[] content = Files.readAllBytes(file.toPath());
+            this.checksum = sha256(content);
+
+            // Statements end with a semicolon at the end of a line; comment lines are dropped
+            StringBuilder current = new StringBuilder();
+            for (String line : new String(content, StandardCharsets.UTF_8).split("\n")) {
+                String trimmed = line.trim();
+                if (trimmed.isEmpty() || trimmed.startsWith("--")) {
+                    continue;
+                }
+                current.append(line).append('\n');
+                if (trimmed.endsWith(";")) {
+                    String sql = current.toString().trim();
+                    statements.add(sql.substring(0, sql.length() - 1));
+                    current.setLength(0);
+                }
+            }
+            if (current.toString().trim().length() > 0) {
+                statements.add(current.toString().trim());
+            }
+        }
+
+        private static String sha256(byte[] content) {
+            try {
+                StringBuilder hex = new StringBuilder();
+                for (byte b : MessageDigest.getInstance("SHA-256").digest(content)) {
+                    hex.append(String.format("%02x", b));
+                }
+                return hex.toString();
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * A hot query and sample parameters of the right types to explain it with.
+     */
+    private static class PlanCheck {
+        final String name;
+        final String sql;
+        final Object[] parameters;
+
+        PlanCheck(String name, String sql, Object... parameters) {
+            this.name = name;
+            this.sql = sql;
+            this.parameters = parameters;
+        }
+    }
+}
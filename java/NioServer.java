@@ -0,0 +1,411 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.sql.DataSource;
+
+/**
+ * A selector-based front end for the line protocol and the framed protocol on the server port.
+ *
+ * One thread accepts connections and reads whatever bytes are available. The first byte tells
+ * the protocols apart: a zero byte starts the framed handshake, anything else a text command.
+ * The bytes are split into newline-terminated commands or into frames. Complete lines or frames are handed to a small worker pool which feeds
+ * them to the connection's ClientHandler, one line at a time per connection and in order.
+ * Responses are queued and written back by the selector thread. A connection whose queue of
+ * complete lines or frames is full is not read until its worker catches up, and one whose
+ * client has let MAX_QUEUED_BYTES of responses pile up is neither read nor drained until the
+ * client has taken half of them. A connection that
+ * is idle between commands or between challenge questions only holds its session state and
+ * any partial line, not a thread.
+ */
+class NioServer {
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_LINE_LENGTH = 1024 * 1024;
+    // A session with this many lines or frames waiting for a worker is not read until half have been handled
+    private static final int MAX_QUEUED_FRAMES = 64;
+    // A session with this many response bytes waiting for its client is not read or drained until half are written
+    private static final int MAX_QUEUED_BYTES = 1024 * 1024;
+
+    private final int port;
+    private final DataSource dataSource;
+    private final ExecutorService workers;
+    private final Selector selector;
+    private final Charset charset = Charset.defaultCharset();
+    private final Queue<NioSession> writeRequests = new ConcurrentLinkedQueue<>();
+    private final Queue<NioSession> readRequests = new ConcurrentLinkedQueue<>();
+
+    NioServer(int port, DataSource dataSource, int workerCount) throws IOException {
+        this.port = port;
+        this.dataSource = dataSource;
+        this.workers = Executors.newFixedThreadPool(workerCount, SessionExecutor.namedThreads("nio-worker-"));
+        this.selector = Selector.open();
+    }
+
+    /**
+     * Accepts connections and serves them until the selector fails.
+     *
+     * @throws IOException   if the server socket cannot be opened or the selector fails
+     */
+    void serve() throws IOException {
+        try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+            serverChannel.bind(new InetSocketAddress(port));
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+            ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+
+            while (true) {
+                selector.select();
+
+                NioSession requested;
+                while ((requested = writeRequests.poll()) != null) {
+                    if (requested.key.isValid()) {
+                        requested.key.interestOps(requested.key.interestOps() | SelectionKey.OP_WRITE);
+                    }
+                }
+                while ((requested = readRequests.poll()) != null) {
+                    if (requested.key.isValid()) {
+                        int ops = requested.key.interestOps();
+                        requested.key.interestOps(requested.wantsRead() ? ops | SelectionKey.OP_READ : ops & ~SelectionKey.OP_READ);
+                    }
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    try {
+                        if (key.isAcceptable()) {
+                            accept(serverChannel);
+                        } else {
+                            NioSession session = (NioSession) key.attachment();
+                            if (key.isReadable()) {
+                                session.read(readBuffer);
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                session.write();
+                            }
+                        }
+                    } catch (IOException ex) {
+                        System.out.println("Server exception:" + ex.getMessage());
+                        closeChannel(key);
+                    }
+                }
+            }
+        }
+    }
+
+    private void accept(ServerSocketChannel serverChannel) throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        NioSession session = new NioSession(channel, new ClientHandler(dataSource));
+        session.key = channel.register(selector, SelectionKey.OP_READ, session);
+        session.handler.sessionOpened();
+    }
+
+    private static void closeChannel(SelectionKey key) {
+        key.cancel();
+        if (key.attachment() instanceof NioSession) {
+            ((NioSession) key.attachment()).handler.sessionClosed();
+        }
+        try {
+            key.channel().close();
+        } catch (IOException ex) {
+            System.out.println("Error closing socket: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * The per-connection state: the bytes of an unfinished line or frame, complete ones waiting
+     * for a worker and responses waiting to be written.
+     */
+    private class NioSession {
+        private final SocketChannel channel;
+        private final ClientHandler handler;
+        private SelectionKey key;
+
+        private byte[] partial = new byte[0];
+        private int partialLength;
+
+        // Null until the first byte arrives, then whether the connection speaks the framed protocol
+        private Boolean framed;
+        private int version;
+        // Runs the frames of a pipelining (version 3) connection
+        private RequestScheduler scheduler;
+
+        private final Deque<Protocol.Frame> inbox = new ArrayDeque<>();
+        private boolean scheduled;
+        // Set while the selector has stopped reading because the inbox is full
+        private boolean readPaused;
+        private final Queue<ByteBuffer> outbox = new ConcurrentLinkedQueue<>();
+        private final AtomicLong queuedBytes = new AtomicLong();
+        // Set while the client is not taking its responses fast enough; the session is then neither read nor drained
+        private boolean writeBlocked;
+
+        NioSession(SocketChannel channel, ClientHandler handler) {
+            this.channel = channel;
+            this.handler = handler;
+        }
+
+        /**
+         * Reads the available bytes and dispatches every complete line or frame. Runs on the
+         * selector thread.
+         *
+         * @param  buffer   the selector thread's shared read buffer
+         */
+        void read(ByteBuffer buffer) throws IOException {
+            buffer.clear();
+            int count = channel.read(buffer);
+            if (count < 0) {
+                closeChannel(key);
+                return;
+            }
+            buffer.flip();
+            if (framed == null && buffer.hasRemaining()) {
+                framed = buffer.get(buffer.position()) == 0x00;
+            }
+            if (Boolean.TRUE.equals(framed)) {
+                readFrames(buffer);
+            } else {
+                readLines(buffer);
+            }
+        }
+
+        private void readLines(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                byte b = buffer.get();
+                if (b == '\n') {
+                    int length = partialLength;
+                    if (length > 0 && partial[length - 1] == '\r') {
+                        length--;
+                    }
+                    dispatch(new Protocol.Frame(Protocol.INPUT, Protocol.UNTAGGED, new String(partial, 0, length, charset)));
+                    partialLength = 0;
+                    if (partial.length > 256) {
+                        partial = new byte[0];
+                    }
+                } else {
+                    if (partialLength == MAX_LINE_LENGTH) {
+                        throw new IOException("Line too long");
+                    }
+                    if (partialLength == partial.length) {
+                        partial = Arrays.copyOf(partial, Math.min(MAX_LINE_LENGTH, Math.max(64, partial.length * 2)));
+                    }
+                    partial[partialLength++] = b;
+                }
+            }
+        }
+
+        private void readFrames(ByteBuffer buffer) throws IOException {
+            int count = buffer.remaining();
+            if (partialLength + count > partial.length) {
+                partial = Arrays.copyOf(partial, Math.max(partialLength + count, partial.length * 2));
+            }
+            buffer.get(partial, partialLength, count);
+            partialLength += count;
+
+            int position = 0;
+            if (version == 0) {
+                if (partialLength < Protocol.HANDSHAKE_LENGTH) {
+                    return;
+                }
+                if (!Protocol.isHandshake(partial, 0)) {
+                    throw new IOException("Malformed protocol handshake");
+                }
+                int chosen = Protocol.negotiate(partial[3]);
+                if (chosen == 0) {
+                    channel.write(ByteBuffer.wrap(Protocol.handshake(0)));
+                    closeChannel(key);
+                    return;
+                }
+                if (chosen >= Protocol.TAGGED_VERSION) {
+                    scheduler = RequestScheduler.fromConfig(handler, workers, this::send);
+                }
+                send(Protocol.handshake(chosen));
+                version = chosen;
+                position = Protocol.HANDSHAKE_LENGTH;
+            }
+            // The length is checked against MAX_FRAME_LENGTH before the payload is waited for
+            while (partialLength - position >= Protocol.HEADER_LENGTH) {
+                int length = Protocol.payloadLength(partial, position);
+                if (partialLength - position - Protocol.HEADER_LENGTH < length) {
+                    break;
+                }
+                dispatch(Protocol.decode(partial[position + 4], partial, position + Protocol.HEADER_LENGTH, length,
+                        version >= Protocol.TAGGED_VERSION));
+                position += Protocol.HEADER_LENGTH + length;
+            }
+            partialLength -= position;
+            System.arraycopy(partial, position, partial, 0, partialLength);
+            if (partialLength == 0 && partial.length > READ_BUFFER_SIZE) {
+                partial = new byte[0];
+            }
+        }
+
+        private void dispatch(Protocol.Frame frame) {
+            synchronized (this) {
+                inbox.add(frame);
+                if (inbox.size() >= MAX_QUEUED_FRAMES && !readPaused) {
+                    readPaused = true;
+                    key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                }
+                if (scheduled || writeBlocked) {
+                    return;
+                }
+                scheduled = true;
+            }
+            workers.execute(this::drain);
+        }
+
+        /**
+         * Starts draining again after the scheduler's window was full or the client caught up
+         * with its responses.
+         */
+        private void resume() {
+            synchronized (this) {
+                if (scheduled || writeBlocked || inbox.isEmpty()) {
+                    return;
+                }
+                scheduled = true;
+            }
+            workers.execute(this::drain);
+        }
+
+        /**
+         * Feeds queued lines or frames to the handler in order. Runs on a worker thread; at most
+         * one worker drains a given session at a time.
+         */
+        private void drain() {
+            while (true) {
+                Protocol.Frame frame;
+                synchronized (this) {
+                    if (writeBlocked) {
+                        // Resumed by write() once the client has taken enough of its responses
+                        scheduled = false;
+                        return;
+                    }
+                    frame = inbox.poll();
+                    if (readPaused && inbox.size() <= MAX_QUEUED_FRAMES / 2) {
+                        readPaused = false;
+                        readRequests.add(this);
+                        selector.wakeup();
+                    }
+                    if (frame == null) {
+                        scheduled = false;
+                        return;
+                    }
+                }
+                if (scheduler != null) {
+                    // Pipelined frames are answered by the scheduler, possibly out of order. A
+                    // worker must not block on a full window, so the frame waits in the inbox
+                    // until one of the session's frames has been answered.
+                    if (!scheduler.trySubmit(frame, this::resume)) {
+                        synchronized (this) {
+                            inbox.addFirst(frame);
+                            scheduled = false;
+                        }
+                        return;
+                    }
+                    continue;
+                }
+                ByteArrayOutputStream output = new ByteArrayOutputStream();
+                if (framed) {
+                    handler.handleFrame(frame, new Protocol.FrameWriter(output, Protocol.UNTAGGED));
+                } else {
+                    PrintWriter writer = new PrintWriter(new OutputStreamWriter(output, charset));
+                    try {
+                        handler.handleLine(frame.text(), writer);
+                    } catch (RuntimeException ex) {
+                        System.out.println("Server exception:" + ex.getMessage());
+                        ex.printStackTrace();
+                    }
+                    writer.flush();
+                }
+                if (output.size() > 0) {
+                    send(output.toByteArray());
+                }
+            }
+        }
+
+        /**
+         * Queues bytes for the selector thread to write, blocking the session once too many are
+         * waiting. Runs on a worker thread, or on the selector thread for the handshake.
+         *
+         * @param  bytes    the bytes to write
+         */
+        private void send(byte[] bytes) {
+            outbox.add(ByteBuffer.wrap(bytes));
+            if (queuedBytes.addAndGet(bytes.length) > MAX_QUEUED_BYTES) {
+                synchronized (this) {
+                    if (!writeBlocked) {
+                        writeBlocked = true;
+                        readRequests.add(this);
+                    }
+                }
+            }
+            // Queued after writeBlocked is set, so write() always runs to lift it again
+            writeRequests.add(this);
+            selector.wakeup();
+        }
+
+        synchronized boolean wantsRead() {
+            return !readPaused && !writeBlocked;
+        }
+
+        /**
+         * Writes as much of the queued output as the socket accepts. Runs on the selector thread.
+         */
+        void write() throws IOException {
+            ByteBuffer next;
+            while ((next = outbox.peek()) != null) {
+                channel.write(next);
+                if (next.hasRemaining()) {
+                    break;
+                }
+                outbox.poll();
+                queuedBytes.addAndGet(-next.limit());
+            }
+            boolean unblocked = false;
+            synchronized (this) {
+                if (writeBlocked && queuedBytes.get() <= MAX_QUEUED_BYTES / 2) {
+                    writeBlocked = false;
+                    unblocked = true;
+                }
+            }
+            if (unblocked) {
+                if (wantsRead()) {
+                    key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+                }
+                resume();
+            }
+            if (outbox.isEmpty()) {
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+                // A worker may have queued more between the check and the line above
+                if (!outbox.isEmpty()) {
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,401 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The framed wire protocol, versions 2 and 3, shared by ClientHandler, NioServer and ProtocolClient.
+ *
+ * A connection starts with a handshake: the client sends the bytes 0x00 'M' 'Q' followed by the
+ * highest version it speaks, and the server answers with the same prefix and the version it
+ * chose, or 0 before closing if it speaks none of them. A version 1 client starts with a text
+ * command instead, never with a zero byte, so both run on the same port.
+ *
+ * After the handshake every message is a frame: a four-byte big-endian payload length, a type
+ * byte and the payload. A REQUEST carries the command and its arguments as fields, each a
+ * four-byte length and UTF-8 bytes, so arguments may contain spaces. INPUT, DATA, PROMPT and
+ * ERROR carry one line of UTF-8 text.
+ *
+ * The server answers every REQUEST and every INPUT with any number of DATA frames, one per
+ * line of output, followed by exactly one of:
+ * - PROMPT when the command waits for input, with any text shown before the input;
+ * - RESPONSE when the command has finished;
+ * - ERROR when the frame could not be handled.
+ * A client therefore always knows where a response ends, and the text end markers of
+ * version 1 are not sent.
+ *
+ * Version 3 starts every payload with a four-byte request ID chosen by the client, and the
+ * frames answering it carry the same ID. A client may then send several requests without
+ * waiting. The server runs read-only commands concurrently and returns their answers in
+ * the order they finish, and runs everything else in the order it was sent (see
+ * RequestScheduler). Version 2 has no IDs and answers strictly in order.
+ */
+class Protocol {
+    static final int MIN_VERSION = 2;
+    static final int MAX_VERSION = 3;
+    // The first version whose frames carry a request ID
+    static final int TAGGED_VERSION = 3;
+    // The request ID of frames in versions without IDs
+    static final int UNTAGGED = -1;
+    static final int HANDSHAKE_LENGTH = 4;
+    static final int HEADER_LENGTH = 5;
+    static final int MAX_FRAME_LENGTH = 1024 * 1024;
+
+    static final byte REQUEST = 1;
+    static final byte INPUT = 2;
+    static final byte DATA = 3;
+    static final byte PROMPT = 4;
+    static final byte RESPONSE = 5;
+    static final byte ERROR = 6;
+
+    // Lines that end a response in version 1 and are replaced by the RESPONSE frame
+    private static final Set<String> V1_END_MARKERS = Set.of("END_OF_RESPONSE", "END_OF_CHALLENGES");
+
+    private Protocol() {
+    }
+
+    /**
+     * Returns the handshake announcing a version.
+     *
+     * @param  version   the version offered by a client or chosen by the server
+     * @return           the four handshake bytes
+     */
+    static byte[] handshake(int version) {
+        return new byte[] {0x00, 'M', 'Q', (byte) version};
+    }
+
+    /**
+     * Checks whether bytes start with the handshake prefix.
+     *
+     * @param  bytes    the buffer holding at least HANDSHAKE_LENGTH bytes
+     * @param  offset   where the handshake starts
+     * @return          true if the prefix matches
+     */
+    static boolean isHandshake(byte[] bytes, int offset) {
+        return bytes[offset] == 0x00 && bytes[offset + 1] == 'M' && bytes[offset + 2] == 'Q';
+    }
+
+    /**
+     * Picks the version to speak with a client.
+     *
+     * @param  offered   the highest version the client speaks
+     * @return           the chosen version, or 0 if there is none in common
+     */
+    static int negotiate(int offered) {
+        return offered >= MIN_VERSION ? Math.min(offered, MAX_VERSION) : 0;
+    }
+
+    /**
+     * Reads a client's handshake and answers it. Used by the blocking front end.
+     *
+     * @param  in    the connection's input
+     * @param  out   the connection's output
+     * @return       the chosen version, or 0 if the connection should be closed
+     * @throws IOException if the handshake is malformed or the connection fails
+     */
+    static int acceptHandshake(InputStream in, OutputStream out) throws IOException {
+        byte[] hello = in.readNBytes(HANDSHAKE_LENGTH);
+        if (hello.length < HANDSHAKE_LENGTH || !isHandshake(hello, 0)) {
+            throw new IOException("Malformed protocol handshake");
+        }
+        int version = negotiate(hello[3]);
+        out.write(handshake(version));
+        out.flush();
+        return version;
+    }
+
+    /**
+     * Offers a version to the server and reads its answer. Used by ProtocolClient.
+     *
+     * @param  in        the connection's input
+     * @param  out       the connection's output
+     * @param  version   the highest version the client speaks
+     * @return           the version chosen by the server, 0 if it refused
+     * @throws IOException if the answer is malformed or the connection fails
+     */
+    static int offerHandshake(InputStream in, OutputStream out, int version) throws IOException {
+        out.write(handshake(version));
+        out.flush();
+        byte[] answer = in.readNBytes(HANDSHAKE_LENGTH);
+        if (answer.length < HANDSHAKE_LENGTH || !isHandshake(answer, 0)) {
+            throw new IOException("The server does not speak the framed protocol");
+        }
+        return answer[3];
+    }
+
+    /**
+     * Reads the payload length from a frame header.
+     *
+     * @param  bytes    the buffer holding the header
+     * @param  offset   where the header starts
+     * @return          the payload length
+     * @throws IOException if the length is negative or larger than MAX_FRAME_LENGTH
+     */
+    static int payloadLength(byte[] bytes, int offset) throws IOException {
+        int length = ((bytes[offset] & 0xff) << 24) | ((bytes[offset + 1] & 0xff) << 16) |
+                     ((bytes[offset + 2] & 0xff) << 8) | (bytes[offset + 3] & 0xff);
+        if (length < 0 || length > MAX_FRAME_LENGTH) {
+            throw new IOException("Frame too long: " + length);
+        }
+        return length;
+    }
+
+    /**
+     * Decodes a payload that has been read into a buffer.
+     *
+     * @param  type     the frame type
+     * @param  bytes    the buffer holding the payload
+     * @param  offset   where the payload starts
+     * @param  length   the payload length
+     * @param  tagged   whether the payload starts with a request ID
+     * @return          the frame
+     * @throws IOException if the request ID or a REQUEST field runs past the payload
+     */
+    static Frame decode(byte type, byte[] bytes, int offset, int length, boolean tagged) throws IOException {
+        int id = UNTAGGED;
+        if (tagged) {
+            if (length < 4) {
+                throw new IOException("Frame without a request ID");
+            }
+            id = ((bytes[offset] & 0xff) << 24) | ((bytes[offset + 1] & 0xff) << 16) |
+                 ((bytes[offset + 2] & 0xff) << 8) | (bytes[offset + 3] & 0xff);
+            offset += 4;
+            length -= 4;
+        }
+        if (type != REQUEST) {
+            return new Frame(type, id, new String(bytes, offset, length, StandardCharsets.UTF_8));
+        }
+        List<String> fields = new ArrayList<>();
+        int position = offset;
+        int end = offset + length;
+        while (position < end) {
+            if (end - position < 4) {
+                throw new IOException("Truncated request field");
+            }
+            int fieldLength = payloadLength(bytes, position);
+            position += 4;
+            if (fieldLength > end - position) {
+                throw new IOException("Truncated request field");
+            }
+            fields.add(new String(bytes, position, fieldLength, StandardCharsets.UTF_8));
+            position += fieldLength;
+        }
+        return new Frame(REQUEST, id, fields.toArray(new String[0]));
+    }
+
+    /**
+     * Writes a frame with a text payload.
+     *
+     * @param  out    the stream to write to
+     * @param  type   the frame type
+     * @param  id     the request ID, or UNTAGGED
+     * @param  text   the payload
+     * @throws IOException if the stream fails
+     */
+    static void writeText(DataOutputStream out, byte type, int id, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        writeHeader(out, type, id, bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Writes a REQUEST frame.
+     *
+     * @param  out      the stream to write to
+     * @param  id       the request ID, or UNTAGGED
+     * @param  fields   the command and its arguments
+     * @throws IOException if the stream fails
+     */
+    static void writeRequest(DataOutputStream out, int id, String... fields) throws IOException {
+        byte[][] encoded = new byte[fields.length][];
+        int length = 0;
+        for (int i = 0; i < fields.length; i++) {
+            encoded[i] = fields[i].getBytes(StandardCharsets.UTF_8);
+            length += 4 + encoded[i].length;
+        }
+        writeHeader(out, REQUEST, id, length);
+        for (byte[] field : encoded) {
+            out.writeInt(field.length);
+            out.write(field);
+        }
+    }
+
+    private static void writeHeader(DataOutputStream out, byte type, int id, int length) throws IOException {
+        if (id == UNTAGGED) {
+            out.writeInt(length);
+            out.writeByte(type);
+        } else {
+            out.writeInt(length + 4);
+            out.writeByte(type);
+            out.writeInt(id);
+        }
+    }
+
+    /**
+     * One decoded frame. A REQUEST has the command and its arguments as fields; every other
+     * type has its text as the only field.
+     */
+    static class Frame {
+        final byte type;
+        final int id;
+        final String[] fields;
+
+        Frame(byte type, int id, String... fields) {
+            this.type = type;
+            this.id = id;
+            this.fields = fields;
+        }
+
+        String text() {
+            return fields[0];
+        }
+    }
+
+    /**
+     * Reads frames from a blocking stream into one buffer that is reused from frame to frame.
+     */
+    static class FrameReader {
+        private final DataInputStream in;
+        private final boolean tagged;
+        private byte[] buffer = new byte[256];
+
+        FrameReader(InputStream in, int version) {
+            this.in = new DataInputStream(in);
+            this.tagged = version >= TAGGED_VERSION;
+        }
+
+        /**
+         * Reads the next frame.
+         *
+         * @return          the frame, or null when the connection has been closed between frames
+         * @throws IOException if the frame is malformed or the connection fails inside it
+         */
+        Frame next() throws IOException {
+            int length;
+            try {
+                length = in.readInt();
+            } catch (EOFException e) {
+                return null;
+            }
+            if (length < 0 || length > MAX_FRAME_LENGTH) {
+                throw new IOException("Frame too long: " + length);
+            }
+            byte type = in.readByte();
+            if (length > buffer.length) {
+                buffer = new byte[Math.max(length, buffer.length * 2)];
+            }
+            in.readFully(buffer, 0, length);
+            return decode(type, buffer, 0, length, tagged);
+        }
+    }
+
+    /**
+     * The PrintWriter handed to a command on a framed connection. Every line the command prints
+     * becomes a DATA frame; finish() or error() then ends the answer with its final frame.
+     * All frames carry the ID of the frame being answered.
+     */
+    static class FrameWriter extends PrintWriter {
+        private final Framer framer;
+
+        FrameWriter(OutputStream out, int id) {
+            this(new Framer(out, id));
+        }
+
+        private FrameWriter(Framer framer) {
+            super(framer);
+            this.framer = framer;
+        }
+
+        /**
+         * Ends the answer with a PROMPT, carrying any text printed without a line end, or a RESPONSE.
+         *
+         * @param  awaitingInput   whether the command waits for an INPUT frame
+         */
+        void finish(boolean awaitingInput) {
+            flush();
+            framer.end(awaitingInput ? PROMPT : RESPONSE, null);
+        }
+
+        /**
+         * Ends the answer with an ERROR frame.
+         *
+         * @param  message   the reason the frame could not be handled
+         */
+        void error(String message) {
+            flush();
+            framer.end(ERROR, message);
+        }
+    }
+
+    /**
+     * Splits the characters written by a command into lines and frames them.
+     */
+    private static class Framer extends Writer {
+        private final DataOutputStream out;
+        private final int id;
+        private final StringBuilder line = new StringBuilder();
+
+        Framer(OutputStream out, int id) {
+            this.out = new DataOutputStream(out);
+            this.id = id;
+        }
+
+        @Override
+        public void write(char[] chars, int offset, int length) throws IOException {
+            for (int i = offset; i < offset + length; i++) {
+                if (chars[i] == '\n') {
+                    emitLine();
+                } else {
+                    line.append(chars[i]);
+                }
+            }
+        }
+
+        private void emitLine() throws IOException {
+            int length = line.length();
+            if (length > 0 && line.charAt(length - 1) == '\r') {
+                line.setLength(length - 1);
+            }
+            String text = line.toString();
+            line.setLength(0);
+            if (!V1_END_MARKERS.contains(text)) {
+                writeText(out, DATA, id, text);
+            }
+        }
+
+        void end(byte type, String message) {
+            try {
+                if (type == PROMPT) {
+                    writeText(out, PROMPT, id, line.toString());
+                    line.setLength(0);
+                } else {
+                    if (line.length() > 0) {
+                        emitLine();
+                    }
+                    writeText(out, type, id, message != null ? message : "");
+                }
+                out.flush();
+            } catch (IOException e) {
+                System.out.println("Error writing response frame: " + e.getMessage());
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,326 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The client end of the framed protocol.
+ *
+ * Requests and inputs are sent as frames and every one of them is answered by exactly one
+ * Reply, so the client never has to guess where a response ends. submit() sends a request
+ * without waiting and returns its reply as a future, so independent requests can be sent
+ * back to back. A reader thread collects the replies: by request ID when the server speaks
+ * version 3, which answers read-only commands out of order, and in sending order on a
+ * version 2 server.
+ */
+class ProtocolClient implements Closeable {
+    private final Socket socket;
+    private final DataOutputStream out;
+    private final Protocol.FrameReader frames;
+    private final int version;
+    private final AtomicInteger nextId = new AtomicInteger(1);
+
+    // Replies still expected: by ID in version 3, in sending order in version 2
+    private final Map<Integer, Collector> byId = new ConcurrentHashMap<>();
+    private final Queue<Collector> inOrder = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Connects to the server, negotiates the protocol version and starts reading replies.
+     *
+     * @param  host   the server host
+     * @param  port   the server port
+     * @throws IOException if the connection fails or the server refuses every version
+     */
+    ProtocolClient(String host, int port) throws IOException {
+        this.socket = new Socket(host, port);
+        InputStream in = new BufferedInputStream(socket.getInputStream());
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        this.version = Protocol.offerHandshake(in, out, Protocol.MAX_VERSION);
+        if (version < Protocol.MIN_VERSION) {
+            socket.close();
+            throw new IOException("The server does not support protocol version " + Protocol.MAX_VERSION);
+        }
+        this.frames = new Protocol.FrameReader(in, version);
+        Thread reader = SessionExecutor.namedThreads("protocol-reader-").newThread(this::readReplies);
+        reader.start();
+    }
+
+    /**
+     * Returns the protocol version agreed with the server.
+     *
+     * @return          the version
+     */
+    int version() {
+        return version;
+    }
+
+    /**
+     * Sends a command without waiting for its reply. The frame is flushed by the next wait
+     * for a reply, or by flush().
+     *
+     * @param  fields   the command followed by its arguments
+     * @return          the reply, once it has arrived
+     * @throws IOException if the connection fails
+     */
+    CompletableFuture<Reply> submit(String... fields) throws IOException {
+        synchronized (out) {
+            int id = expect();
+            // Registered before writing: a frame larger than the buffer is flushed while it is
+            // written, and its reply may arrive before the write returns
+            Collector collector = pending(id);
+            try {
+                Protocol.writeRequest(out, id, fields);
+            } catch (IOException e) {
+                forget(id, collector);
+                throw e;
+            }
+            return collector.reply;
+        }
+    }
+
+    /**
+     * Answers the prompt of the command in progress without waiting for the reply.
+     *
+     * @param  line   the input
+     * @return        the reply, once it has arrived
+     * @throws IOException if the connection fails
+     */
+    CompletableFuture<Reply> submitInput(String line) throws IOException {
+        synchronized (out) {
+            int id = expect();
+            Collector collector = pending(id);
+            try {
+                Protocol.writeText(out, Protocol.INPUT, id, line);
+            } catch (IOException e) {
+                forget(id, collector);
+                throw e;
+            }
+            return collector.reply;
+        }
+    }
+
+    /**
+     * Sends a command and waits for its reply.
+     *
+     * @param  fields   the command followed by its arguments
+     * @return          the reply
+     * @throws IOException if the connection fails
+     */
+    Reply request(String... fields) throws IOException {
+        return await(submit(fields));
+    }
+
+    /**
+     * Answers the prompt of the command in progress and waits for the reply.
+     *
+     * @param  line   the input
+     * @return        the reply
+     * @throws IOException if the connection fails
+     */
+    Reply input(String line) throws IOException {
+        return await(submitInput(line));
+    }
+
+    /**
+     * Sends a command followed at once by its inputs, then waits for all their replies.
+     *
+     * @param  fields   the command followed by its arguments
+     * @param  inputs   the inputs the command will prompt for
+     * @return          the reply that ended the command, with the lines of every reply
+     * @throws IOException if the connection fails
+     */
+    Reply exchange(String[] fields, List<String> inputs) throws IOException {
+        List<CompletableFuture<Reply>> replies = new ArrayList<>();
+        replies.add(submit(fields));
+        for (String input : inputs) {
+            replies.add(submitInput(input));
+        }
+        return awaitAll(replies);
+    }
+
+    /**
+     * Waits for the replies to a command and the inputs sent after it, in one Reply. If the
+     * command ended before its last input, the errors about the remaining inputs are dropped.
+     *
+     * @param  replies  the replies, in sending order
+     * @return          the first reply that is not a prompt, or the last one, with the lines of every reply
+     * @throws IOException if the connection fails
+     */
+    Reply awaitAll(List<CompletableFuture<Reply>> replies) throws IOException {
+        List<String> lines = new ArrayList<>();
+        Reply ending = null;
+        for (int i = 0; i < replies.size(); i++) {
+            Reply reply = await(replies.get(i));
+            lines.addAll(reply.lines);
+            if (ending == null && (!reply.awaitingInput() || i == replies.size() - 1)) {
+                ending = reply;
+            }
+        }
+        return new Reply(lines, ending.type, ending.text);
+    }
+
+    /**
+     * Waits for a reply, first sending anything still buffered.
+     *
+     * @param  reply    the reply returned by submit or submitInput
+     * @return          the reply
+     * @throws IOException if the connection failed before the reply arrived
+     */
+    Reply await(CompletableFuture<Reply> reply) throws IOException {
+        flush();
+        try {
+            return reply.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the server");
+        }
+    }
+
+    /**
+     * Sends the frames buffered so far.
+     *
+     * @throws IOException if the connection fails
+     */
+    void flush() throws IOException {
+        synchronized (out) {
+            out.flush();
+        }
+    }
+
+    private int expect() {
+        return version >= Protocol.TAGGED_VERSION ? nextId.getAndIncrement() : Protocol.UNTAGGED;
+    }
+
+    private Collector pending(int id) {
+        Collector collector = new Collector();
+        if (id == Protocol.UNTAGGED) {
+            inOrder.add(collector);
+        } else {
+            byId.put(id, collector);
+        }
+        return collector;
+    }
+
+    private void forget(int id, Collector collector) {
+        if (id == Protocol.UNTAGGED) {
+            inOrder.remove(collector);
+        } else {
+            byId.remove(id);
+        }
+    }
+
+    private void readReplies() {
+        try {
+            Protocol.Frame frame;
+            while ((frame = frames.next()) != null) {
+                Collector collector = frame.id == Protocol.UNTAGGED ? inOrder.peek() : byId.get(frame.id);
+                if (collector == null) {
+                    System.out.println("Ignoring a reply nobody is waiting for: " + frame.text());
+                    continue;
+                }
+                if (frame.type == Protocol.DATA) {
+                    collector.lines.add(frame.text());
+                    continue;
+                }
+                if (frame.id == Protocol.UNTAGGED) {
+                    inOrder.poll();
+                } else {
+                    byId.remove(frame.id);
+                }
+                collector.reply.complete(new Reply(collector.lines, frame.type, frame.text()));
+            }
+            failAll(new IOException("Connection closed by the server"));
+        } catch (IOException e) {
+            failAll(e);
+        }
+    }
+
+    private void failAll(IOException e) {
+        for (Collector collector : byId.values()) {
+            collector.reply.completeExceptionally(e);
+        }
+        for (Collector collector : inOrder) {
+            collector.reply.completeExceptionally(e);
+        }
+        byId.clear();
+        inOrder.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    /**
+     * The lines received so far for one request and its reply once the request is answered.
+     */
+    private static class Collector {
+        final List<String> lines = new ArrayList<>();
+        final CompletableFuture<Reply> reply = new CompletableFuture<>();
+    }
+
+    /**
+     * The lines printed in answer to a frame and the frame that ended them.
+     */
+    static class Reply {
+        final List<String> lines;
+        final byte type;
+        // The prompt text for PROMPT, the message for ERROR
+        final String text;
+
+        Reply(List<String> lines, byte type, String text) {
+            this.lines = lines;
+            this.type = type;
+            this.text = text;
+        }
+
+        boolean awaitingInput() {
+            return type == Protocol.PROMPT;
+        }
+
+        boolean isError() {
+            return type == Protocol.ERROR;
+        }
+
+        /**
+         * Checks whether a line of the reply starts with the given text.
+         *
+         * @param  prefix   the text to look for
+         * @return          true if a line starts with it
+         */
+        boolean has(String prefix) {
+            for (String line : lines) {
+                if (line.startsWith(prefix)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Prints the lines of the reply, and the message if it is an error.
+         */
+        void print() {
+            for (String line : lines) {
+                System.out.println(line);
+            }
+            if (isError()) {
+                System.out.println("Error: " + text);
+            }
+        }
+    }
+}
@@ -0,0 +1,173 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Times every statement executed through the connection pool and attributes it to the code
+ * that ran it.
+ *
+ * Each execution is filed under the method that called into JDBC, such as
+ * ClientHandler.loginParticipant, and the fingerprint of its SQL: the text with literals
+ * replaced by ? and IN lists collapsed, so queries that differ only in their constants share
+ * an entry. Executions slower than DB_SLOW_QUERY_MS are logged with the types and sizes of
+ * their bind parameters, never their values. The DB_SLOW_QUERY_TOP most expensive entries by
+ * total time are returned by the slowQueries command.
+ */
+class QueryTracer {
+    // Frames of the JDBC layer itself, skipped when looking for the caller
+    private static final Set<String> JDBC_LAYER = Set.of("ConnectionPool", "StatementCache", "QueryTracer");
+    private static final StackWalker WALKER = StackWalker.getInstance();
+
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^'\\\\]|\\\\.|'')*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("(?<![\\w.])-?\\d+(?:\\.\\d+)?\\b");
+    private static final Pattern IN_LIST = Pattern.compile("(?i)\\bIN\\s*\\(\\s*\\?(?:\\s*,\\s*\\?)*\\s*\\)");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final long slowNanos;
+    private final int topSize;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong slowQueries = new AtomicLong();
+
+    QueryTracer(long slowMs, int topSize) {
+        this.slowNanos = slowMs > 0 ? TimeUnit.MILLISECONDS.toNanos(slowMs) : Long.MAX_VALUE;
+        this.topSize = topSize;
+    }
+
+    /**
+     * Creates a tracer from the DB_SLOW_QUERY_* settings.
+     *
+     * @return          the query tracer
+     */
+    static QueryTracer fromConfig() {
+        return new QueryTracer(Server.getInt("DB_SLOW_QUERY_MS", 200), Server.getInt("DB_SLOW_QUERY_TOP", 10));
+    }
+
+    /**
+     * Reduces SQL text to the shape shared by every execution of the same query.
+     *
+     * @param  sql      the SQL text
+     * @return          the text with literals replaced by ?, IN lists collapsed and whitespace squeezed
+     */
+    static String fingerprint(String sql) {
+        String result = STRING_LITERAL.matcher(sql).replaceAll("?");
+        result = NUMBER_LITERAL.matcher(result).replaceAll("?");
+        result = IN_LIST.matcher(result).replaceAll("IN (?...)");
+        return WHITESPACE.matcher(result).replaceAll(" ").trim();
+    }
+
+    /**
+     * Finds the method that called into JDBC on the current thread.
+     *
+     * @return          the class and method, such as ClientHandler.loginParticipant
+     */
+    static String caller() {
+        return WALKER.walk(frames -> frames
+                .filter(frame -> !isJdbcLayer(frame.getClassName()))
+                .findFirst()
+                .map(frame -> simpleName(frame.getClassName()) + "." + methodName(frame.getMethodName()))
+                .orElse("unknown"));
+    }
+
+    /**
+     * Records one execution, logging it if it was slow.
+     *
+     * @param  caller        the method that ran the statement
+     * @param  fingerprint   the fingerprint of its SQL
+     * @param  nanos         the time taken
+     * @param  parameters    describes the bind parameters, called only for a slow execution
+     */
+    void record(String caller, String fingerprint, long nanos, ParameterShapes parameters) {
+        entries.computeIfAbsent(caller + " " + fingerprint, key -> new Entry(caller, fingerprint)).record(nanos);
+        if (nanos >= slowNanos) {
+            slowQueries.incrementAndGet();
+            System.out.println(String.format("Slow query (%.1f ms) in %s: %s [%s]", nanos / 1e6, caller, fingerprint, parameters.describe()));
+        }
+    }
+
+    /**
+     * Lists the most expensive queries by total execution time.
+     *
+     * @return          one line per query, the most expensive first
+     */
+    List<String> top() {
+        return entries.values().stream()
+                .sorted(Comparator.comparingLong(Entry::totalNanos).reversed())
+                .limit(topSize)
+                .map(Entry::describe)
+                .collect(Collectors.toCollection(ArrayList::new));
+    }
+
+    /**
+     * Describes how much has been traced.
+     *
+     * @return          a one-line summary
+     */
+    String describe() {
+        long threshold = slowNanos == Long.MAX_VALUE ? 0 : TimeUnit.NANOSECONDS.toMillis(slowNanos);
+        return "queries=" + entries.size() + ", slowQueries=" + slowQueries.get() + ", slowThresholdMs=" + threshold;
+    }
+
+    private static boolean isJdbcLayer(String className) {
+        int nested = className.indexOf('$');
+        String outer = nested < 0 ? className : className.substring(0, nested);
+        return JDBC_LAYER.contains(outer) || className.startsWith("java.") || className.startsWith("jdk.")
+                || className.startsWith("com.sun.") || className.startsWith("com.mysql.");
+    }
+
+    private static String simpleName(String className) {
+        return className.substring(Math.max(className.lastIndexOf('.'), className.lastIndexOf('$')) + 1);
+    }
+
+    private static String methodName(String method) {
+        // A lambda is named lambda$enclosingMethod$n; report the enclosing method
+        if (method.startsWith("lambda$")) {
+            int end = method.indexOf('$', 7);
+            return method.substring(7, end < 0 ? method.length() : end);
+        }
+        return method;
+    }
+
+    /**
+     * Describes the bind parameters of a statement when it turns out to be slow.
+     */
+    interface ParameterShapes {
+        String describe();
+    }
+
+    private static class Entry {
+        private final String caller;
+        private final String fingerprint;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder total = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        Entry(String caller, String fingerprint) {
+            this.caller = caller;
+            this.fingerprint = fingerprint;
+        }
+
+        void record(long nanos) {
+            count.increment();
+            total.add(nanos);
+            max.accumulateAndGet(nanos, Math::max);
+        }
+
+        long totalNanos() {
+            return total.sum();
+        }
+
+        String describe() {
+            long executions = Math.max(1, count.sum());
+            return String.format("totalMs=%.1f, count=%d, meanMs=%.2f, maxMs=%.2f, %s: %s",
+                    total.sum() / 1e6, count.sum(), total.sum() / 1e6 / executions, max.get() / 1e6, caller, fingerprint);
+        }
+    }
+}
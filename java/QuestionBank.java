@@ -0,0 +1,188 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.sql.DataSource;
+
+/**
+ * A read-through cache of challenges and their questions.
+ *
+ * A challenge is loaded with one query, covering its duration and every question linked
+ * through challenge_questions, into an immutable Challenge that all attempts share. Entries
+ * stay cached until they are invalidated, either explicitly or by the CatalogWatcher when the
+ * challenge or question tables change.
+ */
+class QuestionBank {
+    static final String LOAD_QUERY = "SELECT c.duration, q.id, q.question_text, q.answer, q.marks FROM challenges c " +
+                                     "LEFT JOIN challenge_questions cq ON cq.challenge_id = c.id " +
+                                     "LEFT JOIN questions q ON q.id = cq.question_id " +
+                                     "WHERE c.id = ? ORDER BY cq.id";
+
+    private final DataSource dataSource;
+    private final Map<Integer, Challenge> challenges = new ConcurrentHashMap<>();
+    // Bumped by every invalidation so a load that raced with one is not cached
+    private final AtomicLong generation = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong totalLoadNanos = new AtomicLong();
+    private final AtomicLong maxLoadNanos = new AtomicLong();
+
+    QuestionBank(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Returns a challenge with its questions, loading it on first use.
+     *
+     * @param  challengeId  the ID of the challenge
+     * @return              the challenge, or an empty challenge of duration 0 if it does not exist
+     * @throws SQLException if the challenge cannot be loaded
+     */
+    Challenge get(int challengeId) throws SQLException {
+        Challenge challenge = challenges.get(challengeId);
+        if (challenge != null) {
+            hits.incrementAndGet();
+            return challenge;
+        }
+        misses.incrementAndGet();
+        long loadGeneration = generation.get();
+        challenge = load(challengeId);
+        if (challenge.exists && generation.get() == loadGeneration) {
+            Challenge raced = challenges.putIfAbsent(challengeId, challenge);
+            if (raced != null) {
+                return raced;
+            }
+        }
+        return challenge;
+    }
+
+    private Challenge load(int challengeId) throws SQLException {
+        long started = System.nanoTime();
+        boolean exists = false;
+        int duration = 0;
+        List<Question> questions = new ArrayList<>();
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(LOAD_QUERY)) {
+            statement.setInt(1, challengeId);
+            ResultSet resultSet = statement.executeQuery();
+            while (resultSet.next()) {
+                exists = true;
+                duration = resultSet.getInt("duration");
+                int questionId = resultSet.getInt("id");
+                if (!resultSet.wasNull()) {
+                    questions.add(new Question(questionId, resultSet.getString("question_text"),
+                            resultSet.getString("answer"), resultSet.getInt("marks")));
+                }
+            }
+        }
+        long elapsed = System.nanoTime() - started;
+        totalLoadNanos.addAndGet(elapsed);
+        maxLoadNanos.accumulateAndGet(elapsed, Math::max);
+        return new Challenge(challengeId, exists, duration, questions);
+    }
+
+    /**
+     * Drops one challenge so that the next attempt reloads it.
+     *
+     * @param  challengeId  the ID of the challenge
+     */
+    void invalidate(int challengeId) {
+        generation.incrementAndGet();
+        challenges.remove(challengeId);
+        invalidations.incrementAndGet();
+    }
+
+    /**
+     * Drops every cached challenge, for when questions shared between challenges change.
+     */
+    void invalidateAll() {
+        generation.incrementAndGet();
+        challenges.clear();
+        invalidations.incrementAndGet();
+    }
+
+    /**
+     * Describes the cache counters.
+     *
+     * @return          a one-line summary for logging
+     */
+    String describe() {
+        long loads = Math.max(1, misses.get());
+        return "cached=" + challenges.size() + ", hits=" + hits.get() + ", misses=" + misses.get() +
+               ", invalidations=" + invalidations.get() +
+               ", avgLoadMs=" + TimeUnit.NANOSECONDS.toMillis(totalLoadNanos.get() / loads) +
+               ", maxLoadMs=" + TimeUnit.NANOSECONDS.toMillis(maxLoadNanos.get());
+    }
+
+    /**
+     * A challenge and its questions as they were when loaded.
+     */
+    static class Challenge {
+        final int id;
+        final boolean exists;
+        final int duration;
+        final List<Question> questions;
+        private final Map<Integer, Question> byId = new HashMap<>();
+
+        Challenge(int id, boolean exists, int duration, List<Question> questions) {
+            this.id = id;
+            this.exists = exists;
+            this.duration = duration;
+            this.questions = Collections.unmodifiableList(questions);
+            for (Question question : questions) {
+                byId.put(question.id, question);
+            }
+        }
+
+        /**
+         * Returns a question of this challenge.
+         *
+         * @param  questionId  the ID of the question
+         * @return             the question, or null if it is not part of the challenge
+         */
+        Question question(int questionId) {
+            return byId.get(questionId);
+        }
+
+        /**
+         * Returns the question IDs in a fresh random order for one attempt.
+         *
+         * @return          the shuffled question IDs
+         */
+        List<Integer> shuffledQuestionIds() {
+            List<Integer> questionIds = new ArrayList<>(questions.size());
+            for (Question question : questions) {
+                questionIds.add(question.id);
+            }
+            Collections.shuffle(questionIds);
+            return questionIds;
+        }
+    }
+
+    /**
+     * A question with its answer and marks.
+     */
+    static class Question {
+        final int id;
+        final String text;
+        final String answer;
+        final int marks;
+
+        Question(int id, String text, String answer, int marks) {
+            this.id = id;
+            this.text = text;
+            this.answer = answer;
+            this.marks = marks;
+        }
+    }
+}
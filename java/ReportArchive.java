@@ -0,0 +1,161 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Keeps audit copies of rendered reports in compressed batches.
+ *
+ * Reports are collected in memory and written as one zip file per batch, either when
+ * REPORT_ARCHIVE_BATCH_SIZE reports are waiting or every REPORT_ARCHIVE_INTERVAL_SECONDS,
+ * whichever comes first. This is one file write per batch instead of one per report.
+ * A report that cannot be written is skipped without losing the rest of its batch, and a
+ * batch whose file cannot be written at all goes back to the queue for the next flush.
+ */
+class ReportArchive {
+    private final File directory;
+    private final int batchSize;
+    private final BlockingQueue<ArchivedReport> pending;
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(SessionExecutor.namedThreads("report-archive-"));
+    private final AtomicInteger sequence = new AtomicInteger();
+    private final AtomicLong archived = new AtomicLong();
+
+    ReportArchive(File directory, int batchSize) {
+        this.directory = directory;
+        this.batchSize = batchSize;
+        // Producers block once several batches are waiting, so a stalled disk cannot exhaust memory
+        this.pending = new LinkedBlockingQueue<>(batchSize * 4);
+    }
+
+    /**
+     * Creates an archive from the REPORT_ARCHIVE_* settings and starts its writer.
+     *
+     * @return          the running archive
+     */
+    static ReportArchive fromConfig() {
+        ReportArchive archive = new ReportArchive(new File(Server.get("REPORT_ARCHIVE_DIR", "reports/archive")),
+                Server.getInt("REPORT_ARCHIVE_BATCH_SIZE", 100));
+        archive.start(Server.getInt("REPORT_ARCHIVE_INTERVAL_SECONDS", 60));
+        return archive;
+    }
+
+    private void start(int intervalSeconds) {
+        directory.mkdirs();
+        writer.scheduleWithFixedDelay(this::flush, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "report-archive-shutdown"));
+    }
+
+    /**
+     * Adds a report to the next batch.
+     *
+     * @param  name     the file name of the report inside the archive
+     * @param  content  the rendered report
+     */
+    void add(String name, byte[] content) {
+        try {
+            pending.put(new ArchivedReport(name, content));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (pending.size() >= batchSize) {
+            writer.execute(this::flush);
+        }
+    }
+
+    /**
+     * Writes every waiting report into a new zip file.
+     */
+    private synchronized void flush() {
+        List<ArchivedReport> batch = new ArrayList<>();
+        pending.drainTo(batch);
+        if (batch.isEmpty()) {
+            return;
+        }
+        String timestamp = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+        File file = new File(directory, "reports-" + timestamp + "-" + sequence.incrementAndGet() + ".zip");
+        Set<String> names = new HashSet<>();
+        int written = 0;
+        try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(file))) {
+            for (ArchivedReport report : batch) {
+                String name = uniqueName(report.name, names);
+                try {
+                    zip.putNextEntry(new ZipEntry(name));
+                    zip.write(report.content);
+                    zip.closeEntry();
+                    written++;
+                } catch (ZipException e) {
+                    System.out.println("Error archiving report " + name + ": " + e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Error archiving " + batch.size() + " reports to " + file + ": " + e.getMessage());
+            file.delete();
+            requeue(batch);
+            return;
+        }
+        archived.addAndGet(written);
+    }
+
+    /**
+     * Returns a name not yet used in the batch, numbering repeats as name-2.pdf, name-3.pdf and so on.
+     *
+     * @param  name     the report's own name
+     * @param  used     the names already in the batch; the returned name is added
+     * @return          the name to store the report under
+     */
+    private static String uniqueName(String name, Set<String> used) {
+        String unique = name;
+        int dot = name.lastIndexOf('.');
+        for (int copy = 2; !used.add(unique); copy++) {
+            unique = dot < 0 ? name + "-" + copy : name.substring(0, dot) + "-" + copy + name.substring(dot);
+        }
+        return unique;
+    }
+
+    private void requeue(List<ArchivedReport> batch) {
+        int dropped = 0;
+        for (ArchivedReport report : batch) {
+            if (!pending.offer(report)) {
+                dropped++;
+            }
+        }
+        if (dropped > 0) {
+            System.out.println("Dropped " + dropped + " reports from the archive; the queue is full");
+        }
+    }
+
+    /**
+     * Describes the archive counters.
+     *
+     * @return          a one-line summary for logging
+     */
+    String describe() {
+        return "archived=" + archived.get() + ", archivePending=" + pending.size();
+    }
+
+    private static class ArchivedReport {
+        final String name;
+        final byte[] content;
+
+        ArchivedReport(String name, byte[] content) {
+            this.name = name;
+            this.content = content;
+        }
+    }
+}
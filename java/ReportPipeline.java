@@ -0,0 +1,261 @@
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.sql.DataSource;
+import com.itextpdf.text.Document;
+import com.itextpdf.text.DocumentException;
+import com.itextpdf.text.Paragraph;
+import com.itextpdf.text.pdf.PdfWriter;
+
+/**
+ * Renders challenge reports and queues them for email off the request path.
+ *
+ * Completed attempts go into a bounded queue served by REPORT_WORKERS threads. When the queue
+ * is full, submit() waits up to REPORT_SUBMIT_TIMEOUT_MS for room and then renders the report
+ * on the calling thread. A deadline burst therefore slows finishers down rather than dropping
+ * reports or growing the queue without limit.
+ *
+ * With REPORT_STORAGE=memory (the default) a report is rendered into a per-worker buffer and
+ * stored with its outbox row, so it never touches reports/. REPORT_ARCHIVE=zip additionally
+ * keeps audit copies in batched zip files. REPORT_STORAGE=file keeps writing one PDF per attempt
+ * into reports/ and attaching it from there.
+ */
+class ReportPipeline {
+    private static final ThreadLocal<ByteArrayOutputStream> BUFFERS = ThreadLocal.withInitial(() -> new ByteArrayOutputStream(16 * 1024));
+
+    private final DataSource dataSource;
+    private final MailOutbox outbox;
+    private final int workerCount;
+    private final long submitTimeoutMs;
+    private final boolean inMemory;
+    private final ReportArchive archive;
+    private final BlockingQueue<ReportJob> queue;
+    private final ExecutorService workers;
+
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong inline = new AtomicLong();
+    private final AtomicLong totalQueueNanos = new AtomicLong();
+    private final AtomicLong maxQueueNanos = new AtomicLong();
+    private final AtomicLong totalRenderNanos = new AtomicLong();
+    private final AtomicLong maxRenderNanos = new AtomicLong();
+    private final Metrics metrics = Server.getMetrics();
+
+    ReportPipeline(DataSource dataSource, MailOutbox outbox, int workerCount, int queueCapacity, long submitTimeoutMs,
+                   boolean inMemory, ReportArchive archive) {
+        this.dataSource = dataSource;
+        this.outbox = outbox;
+        this.workerCount = workerCount;
+        this.submitTimeoutMs = submitTimeoutMs;
+        this.inMemory = inMemory;
+        this.archive = archive;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.workers = Executors.newFixedThreadPool(workerCount, SessionExecutor.namedThreads("report-"));
+    }
+
+    /**
+     * Creates a pipeline from the REPORT_* settings.
+     *
+     * @param  dataSource   the pool used to queue the report emails
+     * @param  outbox       the outbox that sends the reports
+     * @return              the pipeline, not yet started
+     */
+    static ReportPipeline fromConfig(DataSource dataSource, MailOutbox outbox) {
+        return new ReportPipeline(dataSource, outbox,
+                Server.getInt("REPORT_WORKERS", 2),
+                Server.getInt("REPORT_QUEUE_CAPACITY", 1000),
+                Server.getInt("REPORT_SUBMIT_TIMEOUT_MS", 200),
+                !"file".equals(Server.get("REPORT_STORAGE", "memory")),
+                "zip".equals(Server.get("REPORT_ARCHIVE", "none")) ? ReportArchive.fromConfig() : null);
+    }
+
+    /**
+     * Starts the render workers.
+     */
+    void start() {
+        for (int i = 0; i < workerCount; i++) {
+            workers.execute(this::work);
+        }
+    }
+
+    /**
+     * Queues the report of a completed attempt.
+     *
+     * @param  username     the username of the participant
+     * @param  email        the email address to send the report to
+     * @param  challengeId    the ID of the challenge
+     * @param  attemptNumber  the participant's attempt at the challenge
+     * @param  reportLines    the lines of the report
+     */
+    void submit(String username, String email, int challengeId, int attemptNumber, List<String> reportLines) {
+        ReportJob job = new ReportJob(username, email, challengeId, attemptNumber, List.copyOf(reportLines));
+        try {
+            if (queue.offer(job, submitTimeoutMs, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // The workers are saturated; render here so the report is not lost
+        inline.incrementAndGet();
+        process(job);
+    }
+
+    private void work() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                process(queue.take());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void process(ReportJob job) {
+        long started = System.nanoTime();
+        record(started - job.submittedAt, totalQueueNanos, maxQueueNanos);
+        try {
+            // A participant has several attempts at a challenge; each keeps its own report
+            String fileName = job.username + "_challenge_" + job.challengeId + "_attempt_" + job.attemptNumber + ".pdf";
+            if (inMemory) {
+                byte[] report = renderToBytes(job);
+                recordRender(System.nanoTime() - started);
+                if (archive != null) {
+                    archive.add(fileName, report);
+                }
+                try (Connection connection = dataSource.getConnection()) {
+                    outbox.enqueue(connection, job.email, "Challenge Report", "Here is your challenge report.", fileName, report);
+                }
+            } else {
+                String filePath = renderToFile(job, "reports/" + fileName);
+                recordRender(System.nanoTime() - started);
+                try (Connection connection = dataSource.getConnection()) {
+                    outbox.enqueue(connection, job.email, "Challenge Report", "Here is your challenge report.", filePath);
+                }
+            }
+            completed.incrementAndGet();
+        } catch (IOException | DocumentException | SQLException e) {
+            failed.incrementAndGet();
+            System.out.println("Error generating report for " + job.username + ": " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Generates the PDF report of a job into the worker's reusable buffer.
+     *
+     * @param  job    the report job
+     * @return        the rendered report
+     * @throws DocumentException if there is an error with the PDF document
+     */
+    private byte[] renderToBytes(ReportJob job) throws DocumentException {
+        ByteArrayOutputStream buffer = BUFFERS.get();
+        buffer.reset();
+        render(job, buffer);
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Generates the PDF report of a job into a file.
+     *
+     * @param  job       the report job
+     * @param  filePath  the path of the report file
+     * @return           the path of the written report
+     * @throws IOException       if the file cannot be written
+     * @throws DocumentException if there is an error with the PDF document
+     */
+    private String renderToFile(ReportJob job, String filePath) throws IOException, DocumentException {
+        File file = new File(filePath);
+        file.getParentFile().mkdirs(); // Create parent directories if needed
+
+        try (OutputStream out = new FileOutputStream(file)) {
+            render(job, out);
+        }
+        return filePath;
+    }
+
+    private void render(ReportJob job, OutputStream out) throws DocumentException {
+        Document document = new Document();
+        PdfWriter.getInstance(document, out);
+        document.open();
+
+        document.add(new Paragraph("Challenge Report for " + job.username));
+        document.add(new Paragraph("Challenge ID: " + job.challengeId));
+        document.add(new Paragraph(" "));
+
+        for (String line : job.reportLines) {
+            document.add(new Paragraph(line));
+        }
+
+        document.close();
+    }
+
+    private void recordRender(long nanos) {
+        record(nanos, totalRenderNanos, maxRenderNanos);
+        metrics.recordPdfRender(nanos);
+    }
+
+    private static void record(long nanos, AtomicLong total, AtomicLong max) {
+        total.addAndGet(nanos);
+        max.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * Describes the queue depth and job timings.
+     *
+     * @return          a one-line summary for logging
+     */
+    String describe() {
+        long done = Math.max(1, completed.get() + failed.get());
+        return "queued=" + queue.size() + ", completed=" + completed.get() + ", failed=" + failed.get() + ", inline=" + inline.get() +
+               ", avgQueueMs=" + TimeUnit.NANOSECONDS.toMillis(totalQueueNanos.get() / done) +
+               ", maxQueueMs=" + TimeUnit.NANOSECONDS.toMillis(maxQueueNanos.get()) +
+               ", avgRenderMs=" + TimeUnit.NANOSECONDS.toMillis(totalRenderNanos.get() / done) +
+               ", maxRenderMs=" + TimeUnit.NANOSECONDS.toMillis(maxRenderNanos.get()) +
+               (archive != null ? ", " + archive.describe() : "");
+    }
+
+    /**
+     * Logs describe() every intervalSeconds seconds.
+     *
+     * @param  intervalSeconds   the reporting interval, or 0 to disable
+     */
+    void startReporting(int intervalSeconds) {
+        if (intervalSeconds <= 0) {
+            return;
+        }
+        Executors.newSingleThreadScheduledExecutor(SessionExecutor.namedThreads("report-stats-")).scheduleAtFixedRate(
+                () -> System.out.println("Reports: " + describe()), intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * A completed attempt waiting for its report.
+     */
+    private static class ReportJob {
+        final String username;
+        final String email;
+        final int challengeId;
+        final int attemptNumber;
+        final List<String> reportLines;
+        final long submittedAt = System.nanoTime();
+
+        ReportJob(String username, String email, int challengeId, int attemptNumber, List<String> reportLines) {
+            this.username = username;
+            this.email = email;
+            this.challengeId = challengeId;
+            this.attemptNumber = attemptNumber;
+            this.reportLines = reportLines;
+        }
+    }
+}
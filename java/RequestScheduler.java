@@ -0,0 +1,132 @@
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Runs the frames of one pipelining connection (protocol version 3).
+ *
+ * Read-only commands (ClientHandler.isConcurrent) run concurrently with each other. Every
+ * other frame, such as a login, a confirmation or the answer to a question, waits for all
+ * frames sent before it, and frames sent after it wait for it in turn. A client therefore
+ * sees the effects of its commands in the order it sent them, while a batch of lookups
+ * costs one round trip instead of one each. Each answer is rendered into its own buffer and
+ * handed to the connection whole, so the frames of concurrent answers never interleave.
+ *
+ * At most PIPELINE_WINDOW frames of a connection are waiting or running at a time. Beyond
+ * that submit() blocks, so a client pipelining faster than it is answered stops being read
+ * instead of filling the shared workers' queue.
+ */
+class RequestScheduler {
+    private final ClientHandler handler;
+    private final Executor executor;
+    private final Consumer<byte[]> output;
+    private final Semaphore window;
+    // Run once a frame finishes after trySubmit() found the window full
+    private final AtomicReference<Runnable> waiting = new AtomicReference<>();
+
+    // Touched only by the thread submitting the connection's frames
+    private CompletableFuture<Void> ordered = CompletableFuture.completedFuture(null);
+    private final List<CompletableFuture<Void>> concurrent = new ArrayList<>();
+
+    /**
+     * Creates a scheduler for one connection.
+     *
+     * @param  handler    the connection's handler
+     * @param  executor   the threads that run the commands
+     * @param  output     receives each complete answer; called from the executor's threads
+     * @param  window     how many frames may be waiting or running at once
+     */
+    RequestScheduler(ClientHandler handler, Executor executor, Consumer<byte[]> output, int window) {
+        this.handler = handler;
+        this.executor = executor;
+        this.output = output;
+        this.window = new Semaphore(window);
+    }
+
+    /**
+     * Creates a scheduler for one connection with the PIPELINE_WINDOW setting.
+     *
+     * @param  handler    the connection's handler
+     * @param  executor   the threads that run the commands
+     * @param  output     receives each complete answer; called from the executor's threads
+     * @return            the scheduler
+     */
+    static RequestScheduler fromConfig(ClientHandler handler, Executor executor, Consumer<byte[]> output) {
+        return new RequestScheduler(handler, executor, output, Server.getInt("PIPELINE_WINDOW", 32));
+    }
+
+    /**
+     * Schedules a frame, waiting while the window is full. Frames must be submitted from one
+     * thread at a time, in arrival order, and that thread must not be one of the executor's.
+     *
+     * @param  frame    the frame received from the client
+     */
+    void submit(Protocol.Frame frame) {
+        window.acquireUninterruptibly();
+        schedule(frame);
+    }
+
+    /**
+     * Schedules a frame unless the window is full, for callers that must not block.
+     *
+     * @param  frame        the frame received from the client
+     * @param  onCapacity   run once a frame finishes, if this one was refused
+     * @return              false if the frame was refused and must be submitted again later
+     */
+    boolean trySubmit(Protocol.Frame frame, Runnable onCapacity) {
+        if (!window.tryAcquire()) {
+            waiting.set(onCapacity);
+            // A frame may have finished before the callback was in place
+            if (!window.tryAcquire()) {
+                return false;
+            }
+            waiting.set(null);
+        }
+        schedule(frame);
+        return true;
+    }
+
+    private void schedule(Protocol.Frame frame) {
+        concurrent.removeIf(CompletableFuture::isDone);
+        if (handler.isConcurrent(frame)) {
+            concurrent.add(ordered.thenRunAsync(() -> answer(frame), executor));
+        } else {
+            concurrent.add(ordered);
+            ordered = CompletableFuture.allOf(concurrent.toArray(new CompletableFuture<?>[0]))
+                    .thenRunAsync(() -> answer(frame), executor);
+            concurrent.clear();
+        }
+    }
+
+    /**
+     * Waits until every submitted frame has been answered.
+     */
+    void awaitIdle() {
+        concurrent.add(ordered);
+        CompletableFuture.allOf(concurrent.toArray(new CompletableFuture<?>[0])).join();
+        concurrent.clear();
+    }
+
+    private void answer(Protocol.Frame frame) {
+        // Never let a failure escape: a failed future would stop every frame queued behind it
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            handler.handleFrame(frame, new Protocol.FrameWriter(buffer, frame.id));
+            output.accept(buffer.toByteArray());
+        } catch (RuntimeException e) {
+            System.out.println("Error answering request " + frame.id + ": " + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            window.release();
+            Runnable resume = waiting.getAndSet(null);
+            if (resume != null) {
+                resume.run();
+            }
+        }
+    }
+}
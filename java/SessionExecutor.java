@@ -0,0 +1,207 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs client sessions with a bounded number of concurrent handlers.
+ *
+ * Three modes are supported, selected with SESSION_MODE:
+ *   thread  - one platform thread per connection (the original behaviour, unbounded)
+ *   pool    - a fixed pool of SESSION_MAX_ACTIVE platform threads
+ *   virtual - one virtual thread per connection, gated to SESSION_MAX_ACTIVE at a time
+ *
+ * In the bounded modes at most SESSION_QUEUE_CAPACITY further sessions wait for a slot;
+ * anything beyond that is rejected and the socket is closed with a busy message.
+ */
+class SessionExecutor {
+    private final String mode;
+    private final int maxActive;
+    private final int queueCapacity;
+    private final ExecutorService executor;
+    private final Semaphore slots;
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong rejected = new AtomicLong();
+
+    SessionExecutor(String mode, int maxActive, int queueCapacity) {
+        this.maxActive = maxActive;
+        this.queueCapacity = queueCapacity;
+        ExecutorService virtualExecutor = "virtual".equals(mode) ? newVirtualThreadExecutor() : null;
+
+        if (virtualExecutor != null) {
+            this.mode = "virtual";
+            this.executor = virtualExecutor;
+            this.slots = new Semaphore(maxActive, true);
+        } else if ("pool".equals(mode) || "virtual".equals(mode)) {
+            if ("virtual".equals(mode)) {
+                System.out.println("Virtual threads are not available on this JVM, using a bounded pool instead");
+            }
+            this.mode = "pool";
+            this.executor = new ThreadPoolExecutor(maxActive, maxActive, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(queueCapacity), namedThreads("session-"), new ThreadPoolExecutor.AbortPolicy());
+            this.slots = null;
+        } else {
+            this.mode = "thread";
+            this.executor = null;
+            this.slots = null;
+        }
+    }
+
+    /**
+     * Creates a session executor from the SESSION_MODE, SESSION_MAX_ACTIVE and SESSION_QUEUE_CAPACITY settings.
+     *
+     * @return          the configured session executor
+     */
+    static SessionExecutor fromConfig() {
+        return new SessionExecutor(
+                Server.get("SESSION_MODE", "pool"),
+                Server.getInt("SESSION_MAX_ACTIVE", 1000),
+                Server.getInt("SESSION_QUEUE_CAPACITY", 10000));
+    }
+
+    /**
+     * Schedules a client handler, rejecting it if all slots and queue places are taken.
+     *
+     * @param  handler   the handler for an accepted connection
+     */
+    void submit(ClientHandler handler) {
+        if (executor == null) {
+            new Thread(() -> runSession(handler), "session-" + handler.getSocket().getPort()).start();
+            return;
+        }
+        if (slots != null && queued.get() >= queueCapacity && slots.availablePermits() == 0) {
+            reject(handler);
+            return;
+        }
+        queued.incrementAndGet();
+        try {
+            executor.execute(() -> {
+                try {
+                    if (slots != null) {
+                        slots.acquireUninterruptibly();
+                    }
+                    queued.decrementAndGet();
+                    runSession(handler);
+                } finally {
+                    if (slots != null) {
+                        slots.release();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            queued.decrementAndGet();
+            reject(handler);
+        }
+    }
+
+    private void runSession(ClientHandler handler) {
+        active.incrementAndGet();
+        try {
+            handler.run();
+        } finally {
+            active.decrementAndGet();
+        }
+    }
+
+    private void reject(ClientHandler handler) {
+        rejected.incrementAndGet();
+        try (Socket socket = handler.getSocket()) {
+            PrintWriter writer = new PrintWriter(socket.getOutputStream(), true);
+            writer.println("Server busy, please try again later.");
+        } catch (IOException e) {
+            System.out.println("Error rejecting session: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the number of sessions currently being served.
+     *
+     * @return          the active session count
+     */
+    int getActiveCount() {
+        return active.get();
+    }
+
+    /**
+     * Returns the number of accepted sessions waiting for a free slot.
+     *
+     * @return          the queued session count
+     */
+    int getQueuedCount() {
+        return queued.get();
+    }
+
+    /**
+     * Returns the number of sessions turned away since startup.
+     *
+     * @return          the rejected session count
+     */
+    long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * Describes the execution mode and current session counts.
+     *
+     * @return          a one-line summary for logging
+     */
+    String describe() {
+        if (executor == null) {
+            return "mode=thread, active=" + getActiveCount();
+        }
+        return "mode=" + mode + ", maxActive=" + maxActive + ", queueCapacity=" + queueCapacity
+                + ", active=" + getActiveCount() + ", queued=" + getQueuedCount() + ", rejected=" + getRejectedCount();
+    }
+
+    /**
+     * Logs the session counts at a fixed interval.
+     *
+     * @param  intervalSeconds   the reporting interval, or 0 to disable reporting
+     */
+    void startReporting(int intervalSeconds) {
+        if (intervalSeconds <= 0) {
+            return;
+        }
+        Executors.newSingleThreadScheduledExecutor(namedThreads("session-report-")).scheduleAtFixedRate(
+                () -> System.out.println("Sessions: " + describe()), intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Creates a thread factory producing daemon threads with the given name prefix.
+     *
+     * @param  prefix    the thread name prefix
+     * @return           the thread factory
+     */
+    static ThreadFactory namedThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Looks up Executors.newVirtualThreadPerTaskExecutor reflectively so the server still runs on JVMs without it.
+     *
+     * @return          a virtual-thread executor, or null if the JVM does not support virtual threads
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
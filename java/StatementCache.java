@@ -0,0 +1,278 @@
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A per-connection cache of prepared statements keyed by SQL text.
+ *
+ * Borrowers get a wrapper around the cached statement; closing the wrapper closes the result
+ * set it produced and clears the parameters, but keeps the statement prepared for the next
+ * borrower of the same physical connection. The least recently used statements are closed
+ * once the cache holds more than its capacity; with a capacity of 0 every statement is closed
+ * when its borrower closes it. A cache is only ever used by the single borrower of its
+ * connection, so it needs no locking.
+ *
+ * Every execution is timed and handed to the pool's QueryTracer together with the SQL
+ * fingerprint, which is worked out once per cached statement.
+ */
+class StatementCache {
+    private final Connection physical;
+    private final int capacity;
+    private final Stats stats;
+    private final QueryTracer tracer;
+    private final LinkedHashMap<String, CachedStatement> statements;
+    private final List<CachedStatement> leased = new ArrayList<>();
+    private final Metrics metrics = Server.getMetrics();
+
+    StatementCache(Connection physical, int capacity, Stats stats, QueryTracer tracer) {
+        this.physical = physical;
+        this.capacity = capacity;
+        this.stats = stats;
+        this.tracer = tracer;
+        this.statements = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Returns a prepared statement for the SQL text, reusing the cached one when it is free.
+     *
+     * @param  sql          the SQL text
+     * @param  connection   the connection proxy the statement should report as its owner
+     * @return              a statement wrapper whose close() returns it to the cache
+     * @throws SQLException if the statement cannot be prepared
+     */
+    PreparedStatement prepare(String sql, Connection connection) throws SQLException {
+        CachedStatement cached = statements.get(sql);
+        if (cached != null && !cached.inUse) {
+            stats.hits.incrementAndGet();
+        } else if (cached != null) {
+            // The same SQL is already open in this unit of work, so hand out a private copy
+            stats.misses.incrementAndGet();
+            return new CachedStatement(physical.prepareStatement(sql), sql, false).lease(connection);
+        } else {
+            stats.misses.incrementAndGet();
+            cached = new CachedStatement(physical.prepareStatement(sql), sql, true);
+            statements.put(sql, cached);
+            // Leased before evicting, so a cache too small to keep it closes it on release instead of now
+            PreparedStatement leased = cached.lease(connection);
+            evictOverCapacity();
+            return leased;
+        }
+        return cached.lease(connection);
+    }
+
+    private void evictOverCapacity() {
+        Iterator<CachedStatement> iterator = statements.values().iterator();
+        while (statements.size() > capacity && iterator.hasNext()) {
+            CachedStatement eldest = iterator.next();
+            iterator.remove();
+            stats.evictions.incrementAndGet();
+            eldest.cached = false;
+            if (!eldest.inUse) {
+                eldest.closeQuietly();
+            }
+        }
+    }
+
+    /**
+     * Returns every statement still held by the finished borrower to the cache.
+     */
+    void releaseAll() {
+        for (CachedStatement cached : new ArrayList<>(leased)) {
+            cached.release();
+        }
+    }
+
+    /**
+     * Closes all cached statements, for when the physical connection is discarded.
+     */
+    void closeAll() {
+        releaseAll();
+        for (CachedStatement cached : statements.values()) {
+            cached.closeQuietly();
+        }
+        statements.clear();
+    }
+
+    /**
+     * Hit, miss and eviction counts shared by the caches of one pool.
+     */
+    static class Stats {
+        final AtomicLong hits = new AtomicLong();
+        final AtomicLong misses = new AtomicLong();
+        final AtomicLong evictions = new AtomicLong();
+
+        String describe() {
+            return "statementHits=" + hits.get() + ", statementMisses=" + misses.get() + ", statementEvictions=" + evictions.get();
+        }
+    }
+
+    /**
+     * A physical prepared statement and the result sets opened through it by the current borrower.
+     */
+    private class CachedStatement {
+        private final PreparedStatement statement;
+        private final String fingerprint;
+        private final List<ResultSet> openResults = new ArrayList<>(1);
+        private boolean cached;
+        private boolean inUse;
+        private Lease lease;
+
+        CachedStatement(PreparedStatement statement, String sql, boolean cached) {
+            this.statement = statement;
+            this.fingerprint = QueryTracer.fingerprint(sql);
+            this.cached = cached;
+        }
+
+        PreparedStatement lease(Connection connection) {
+            inUse = true;
+            leased.add(this);
+            lease = new Lease(connection);
+            return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                    new Class<?>[] { PreparedStatement.class }, lease);
+        }
+
+        void release() {
+            lease.closed = true;
+            for (ResultSet resultSet : openResults) {
+                try {
+                    resultSet.close();
+                } catch (SQLException e) {
+                    System.out.println("Error closing result set: " + e.getMessage());
+                }
+            }
+            openResults.clear();
+            inUse = false;
+            leased.remove(this);
+            if (!cached) {
+                closeQuietly();
+                return;
+            }
+            try {
+                statement.clearParameters();
+            } catch (SQLException e) {
+                closeQuietly();
+            }
+        }
+
+        void closeQuietly() {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                System.out.println("Error closing statement: " + e.getMessage());
+            }
+        }
+
+        private class Lease implements InvocationHandler, QueryTracer.ParameterShapes {
+            private final Connection connection;
+            private boolean closed;
+            // The setter and value bound to each parameter index, kept to describe a slow execution
+            private String[] setters = new String[0];
+            private Object[] values = new Object[0];
+
+            Lease(Connection connection) {
+                this.connection = connection;
+            }
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                switch (method.getName()) {
+                    case "close":
+                        if (!closed) {
+                            release();
+                        }
+                        return null;
+                    case "isClosed":
+                        return closed;
+                    case "getConnection":
+                        return connection;
+                    default:
+                        if (closed) {
+                            throw new SQLException("Statement is closed");
+                        }
+                        Object result;
+                        // Only the execute methods reach the database; setters are not worth timing
+                        boolean execute = method.getName().startsWith("execute");
+                        if (!execute) {
+                            bind(method.getName(), args);
+                        }
+                        long started = execute ? System.nanoTime() : 0;
+                        try {
+                            result = method.invoke(statement, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        } finally {
+                            if (execute) {
+                                long nanos = System.nanoTime() - started;
+                                metrics.recordStatement(nanos);
+                                tracer.record(QueryTracer.caller(), fingerprint, nanos, this);
+                            }
+                        }
+                        if (result instanceof ResultSet) {
+                            openResults.add((ResultSet) result);
+                        }
+                        return result;
+                }
+            }
+
+            private void bind(String setter, Object[] args) {
+                if ("clearParameters".equals(setter)) {
+                    Arrays.fill(setters, null);
+                    Arrays.fill(values, null);
+                    return;
+                }
+                if (!setter.startsWith("set") || args == null || args.length < 2 || !(args[0] instanceof Integer)) {
+                    return;
+                }
+                int index = (Integer) args[0];
+                if (index < 1 || index > 1000) {
+                    return;
+                }
+                if (index > setters.length) {
+                    setters = Arrays.copyOf(setters, index);
+                    values = Arrays.copyOf(values, index);
+                }
+                setters[index - 1] = setter.substring(3);
+                values[index - 1] = args[1];
+            }
+
+            /**
+             * Describes the bound parameters by type and size, such as "String(8), Int, null".
+             *
+             * @return          the parameter shapes, in index order
+             */
+            @Override
+            public String describe() {
+                StringBuilder shapes = new StringBuilder();
+                for (int i = 0; i < setters.length; i++) {
+                    if (i > 0) {
+                        shapes.append(", ");
+                    }
+                    Object value = values[i];
+                    if (setters[i] == null) {
+                        shapes.append('-');
+                    } else if (value == null || "Null".equals(setters[i])) {
+                        shapes.append("null");
+                    } else if (value instanceof CharSequence) {
+                        shapes.append(setters[i]).append('(').append(((CharSequence) value).length()).append(')');
+                    } else if (value instanceof byte[]) {
+                        shapes.append(setters[i]).append('(').append(((byte[]) value).length).append(')');
+                    } else {
+                        shapes.append(setters[i]);
+                    }
+                }
+                return shapes.toString();
+            }
+        }
+    }
+}
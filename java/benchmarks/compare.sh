@@ -0,0 +1,29 @@
+#!/bin/sh
+# Compares two result files written by run.sh, benchmark by benchmark.
+# Usage: ./compare.sh results/<before>.csv results/<after>.csv
+set -e
+if [ $# -ne 2 ]; then
+    echo "Usage: $0 <before.csv> <after.csv>" >&2
+    exit 1
+fi
+awk -F, '
+    function key(   k, i) {
+        k = $1
+        for (i = 8; i <= NF; i++) k = k " " $i
+        gsub(/"/, "", k)
+        gsub(/ +/, " ", k)
+        sub(/ $/, "", k)
+        return k
+    }
+    FNR == 1 { next }
+    NR == FNR { before[key()] = $5; next }
+    {
+        k = key(); unit = $7; gsub(/"/, "", unit)
+        if (k in before) {
+            change = before[k] == 0 ? 0 : ($5 - before[k]) * 100 / before[k]
+            printf "%-70s %14.3f %14.3f %+8.1f%% %s\n", k, before[k], $5, change, unit
+        } else {
+            printf "%-70s %14s %14.3f %9s %s\n", k, "-", $5, "new", unit
+        }
+    }
+' "$1" "$2"
@@ -0,0 +1,15 @@
+#!/bin/sh
+# Builds and runs the benchmarks, keeping the results in results/<commit>.csv.
+# Arguments go to JMH, e.g. ./run.sh PdfReport or ./run.sh -f 3 EndToEnd.
+set -e
+here=$(cd "$(dirname "$0")" && pwd)
+mvn -q -f "$here/pom.xml" package
+commit=$(git -C "$here" rev-parse --short HEAD)
+if [ -n "$(git -C "$here/.." status --porcelain -- . ':!benchmarks/results')" ]; then
+    commit="$commit-dirty"
+fi
+mkdir -p "$here/results"
+# The server reads .env from the working directory
+cd "$here/.."
+java -jar "$here/target/benchmarks.jar" -rf csv -rff "$here/results/$commit.csv" "$@"
+echo "Results written to benchmarks/results/$commit.csv"
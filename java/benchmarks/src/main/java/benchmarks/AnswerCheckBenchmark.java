@@ -0,0 +1,107 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.lang.invoke.MethodHandle;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One answer through AttemptSession.onLine: checking it, formatting the feedback and the
+ * report line, journaling the row and presenting the next question. The attempt journal
+ * writes to a temporary directory; the attempt writer is never started, so nothing reaches
+ * the database.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AnswerCheckBenchmark {
+    private static final int QUESTIONS = 1000;
+    private static final String ANSWER = "42";
+
+    @Param({"true", "false"})
+    public boolean correct;
+
+    private File journalDir;
+    private Object handler;
+    private Object challenge;
+    private MethodHandle newSession;
+    private MethodHandle askNextQuestion;
+    private MethodHandle onLine;
+    private PrintWriter writer;
+    private String answer;
+
+    private Object session;
+    private int remaining;
+
+    @Setup
+    public void setUp() throws Throwable {
+        journalDir = Files.createTempDirectory("attempt-journal-bench").toFile();
+        Object journal = Internals.constructor(Internals.type("AttemptJournal"), File.class, long.class, boolean.class)
+                .invoke(journalDir, 4L * 1024 * 1024, false);
+        Object attemptWriter = Internals.constructor(Internals.type("AttemptWriter"), DataSource.class, journal.getClass(),
+                int.class, long.class, int.class).invoke((DataSource) null, journal, 500, 200L, 100000);
+        // ClientHandler picks the writer up from Server when it is created
+        Internals.set(Internals.type("Server"), "attemptWriter", attemptWriter);
+
+        Class<?> question = Internals.type("QuestionBank$Question");
+        MethodHandle newQuestion = Internals.constructor(question, int.class, String.class, String.class, int.class);
+        List<Object> questions = new ArrayList<>();
+        for (int i = 1; i <= QUESTIONS; i++) {
+            questions.add(newQuestion.invoke(i, "What is six times seven, question " + i + "?", ANSWER, 1 + i % 5));
+        }
+        Class<?> challengeType = Internals.type("QuestionBank$Challenge");
+        challenge = Internals.constructor(challengeType, int.class, boolean.class, int.class, List.class)
+                .invoke(1, true, 24 * 60, questions);
+
+        Class<?> clientHandler = Internals.type("ClientHandler");
+        handler = Internals.constructor(clientHandler, DataSource.class).invoke((DataSource) null);
+        Class<?> attemptSession = Internals.type("ClientHandler$AttemptSession");
+        newSession = Internals.constructor(attemptSession, clientHandler, String.class, int.class, challengeType, int.class);
+        askNextQuestion = Internals.method(attemptSession, "askNextQuestion", PrintWriter.class);
+        onLine = Internals.method(attemptSession, "onLine", String.class, PrintWriter.class);
+        writer = new PrintWriter(Writer.nullWriter());
+        answer = correct ? ANSWER : "41";
+        startSession();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        Internals.delete(journalDir);
+    }
+
+    private void startSession() throws Throwable {
+        session = newSession.invoke(handler, "bench_user", 1, challenge, 1);
+        askNextQuestion.invoke(session, writer);
+        remaining = QUESTIONS;
+    }
+
+    @Benchmark
+    public void answer() throws Throwable {
+        // The last answer would complete the attempt, which needs the database
+        if (remaining == 1) {
+            startSession();
+        }
+        onLine.invoke(session, answer, writer);
+        remaining--;
+    }
+}
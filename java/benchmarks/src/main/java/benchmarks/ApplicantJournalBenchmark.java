@@ -0,0 +1,91 @@
+package benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+import java.lang.invoke.MethodHandle;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Removing an applicant from applicants.txt, which is what removeFromFile does on every
+ * confirmation. Each operation removes one applicant of a file of APPLICANTS applicants and
+ * registers them again, so the file keeps its size. The caller never waits for the writer
+ * thread, so the backlog is capped: the score is the rate the journal sustains, not the cost
+ * of filling its queue.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ApplicantJournalBenchmark {
+    private static final int APPLICANTS = 100_000;
+    private static final int MAX_BACKLOG = 10_000;
+
+    @Param({"none", "interval", "batch"})
+    public String fsync;
+
+    private File file;
+    private Object journal;
+    private MethodHandle append;
+    private MethodHandle remove;
+    private MethodHandle queued;
+    private MethodHandle close;
+    private int next;
+
+    @Setup
+    public void setUp() throws Throwable {
+        file = Files.createTempFile("applicants-bench", ".txt").toFile();
+        try (Writer out = new BufferedWriter(new FileWriter(file))) {
+            for (int i = 0; i < APPLICANTS; i++) {
+                out.write(line(i));
+                out.write('\n');
+            }
+        }
+        Class<?> applicantJournal = Internals.type("ApplicantJournal");
+        // Compaction off, so every iteration measures the same work
+        journal = Internals.constructor(applicantJournal, File.class, String.class, long.class, long.class)
+                .invoke(file, fsync, 100L, 0L);
+        Internals.method(applicantJournal, "start").invoke(journal);
+        append = Internals.method(applicantJournal, "append", String.class);
+        remove = Internals.method(applicantJournal, "remove", String.class);
+        queued = Internals.method(applicantJournal, "queued");
+        close = Internals.method(applicantJournal, "close");
+    }
+
+    @TearDown
+    public void tearDown() throws Throwable {
+        close.invoke(journal);
+        Internals.delete(file);
+    }
+
+    private static String line(int i) {
+        return "applicant" + i + " First" + i + " Last" + i + " SCH-" + (i % 500) + " applicant" + i + "@example.com 2010-01-01";
+    }
+
+    @Benchmark
+    public void removeApplicant() throws Throwable {
+        int i = next;
+        next = (next + 1) % APPLICANTS;
+        remove.invoke(journal, "applicant" + i);
+        append.invoke(journal, line(i));
+        while ((int) queued.invoke(journal) > MAX_BACKLOG) {
+            Thread.onSpinWait();
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.invoke.MethodHandle;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sql.DataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A whole challenge attempt against a server started in the benchmark's own JVM: login,
+ * attemptChallenge and one answer per question, over the framed protocol.
+ *
+ * The server is configured from .env as usual and needs its MySQL database. Each trial seeds
+ * a fresh challenge and PARTICIPANTS participants through LoadGenerator, and every operation
+ * logs in the next participant, so a trial runs out of attempts after three per participant.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class EndToEndAttemptBenchmark {
+    private static final String HOST = "localhost";
+    private static final int PORT = 8001;
+    private static final int PARTICIPANTS = 10_000;
+    private static final String USER_PREFIX = "bench_user_";
+    private static final String PASSWORD = "bench";
+    private static final long STARTUP_TIMEOUT_MS = 60_000;
+
+    /**
+     * The in-process server and the seeded challenge, shared by all benchmark threads.
+     */
+    @State(Scope.Benchmark)
+    public static class ServerState {
+        @Param({"10"})
+        public int questions;
+
+        String challengeId;
+        private final AtomicInteger nextParticipant = new AtomicInteger();
+        private PrintStream console;
+
+        @Setup
+        public void setUp() throws Throwable {
+            // Every request is logged; keep the cost of logging but not the output
+            console = System.out;
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+            MethodHandle main = Internals.method(Internals.type("Server"), "main", String[].class);
+            Thread server = new Thread(() -> {
+                try {
+                    main.invoke((Object) new String[0]);
+                } catch (Throwable e) {
+                    e.printStackTrace();
+                }
+            }, "benchmark-server");
+            server.setDaemon(true);
+            server.start();
+            awaitServer();
+
+            Class<?> loadGenerator = Internals.type("LoadGenerator");
+            Object generator = Internals.constructor(loadGenerator, String.class, int.class, int.class, int.class, String.class,
+                    String.class, int.class, long.class, double.class, long.class)
+                    .invoke(HOST, PORT, PARTICIPANTS, 1, USER_PREFIX, PASSWORD, 0, 0L, 1.0, 0L);
+            DataSource dataSource = (DataSource) Internals.method(Internals.type("ConnectionPool"), "fromConfig").invoke();
+            Internals.method(loadGenerator, "seed", DataSource.class, int.class).invoke(generator, dataSource, questions);
+            challengeId = String.valueOf(Internals.get(generator, "challengeId"));
+        }
+
+        @TearDown
+        public void tearDown() {
+            System.setOut(console);
+        }
+
+        String nextParticipant() {
+            return USER_PREFIX + (1 + nextParticipant.getAndIncrement() % PARTICIPANTS);
+        }
+
+        private static void awaitServer() throws InterruptedException {
+            long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT_MS;
+            while (true) {
+                try (Socket socket = new Socket(HOST, PORT)) {
+                    return;
+                } catch (IOException e) {
+                    if (System.currentTimeMillis() > deadline) {
+                        throw new IllegalStateException("The server did not start; check the DB_* settings in .env", e);
+                    }
+                    Thread.sleep(200);
+                }
+            }
+        }
+    }
+
+    /**
+     * One client connection per benchmark thread.
+     */
+    @State(Scope.Thread)
+    public static class ClientState {
+        Object client;
+        MethodHandle exchange;
+        MethodHandle request;
+        MethodHandle input;
+        MethodHandle awaitingInput;
+        MethodHandle has;
+        MethodHandle close;
+
+        @Setup
+        public void setUp() throws Throwable {
+            Class<?> protocolClient = Internals.type("ProtocolClient");
+            Class<?> reply = Internals.type("ProtocolClient$Reply");
+            client = Internals.constructor(protocolClient, String.class, int.class).invoke(HOST, PORT);
+            exchange = Internals.method(protocolClient, "exchange", String[].class, List.class);
+            request = Internals.method(protocolClient, "request", String[].class);
+            input = Internals.method(protocolClient, "input", String.class);
+            awaitingInput = Internals.method(reply, "awaitingInput");
+            has = Internals.method(reply, "has", String.class);
+            close = Internals.method(protocolClient, "close");
+        }
+
+        @TearDown
+        public void tearDown() throws Throwable {
+            close.invoke(client);
+        }
+    }
+
+    @Benchmark
+    public int attempt(ServerState server, ClientState client) throws Throwable {
+        String username = server.nextParticipant();
+        Object reply = client.exchange.invoke(client.client, new String[] {"login", "participant"}, Arrays.asList(username, PASSWORD));
+        if (!(boolean) client.has.invoke(reply, "Login successful!")) {
+            throw new IllegalStateException("Login failed for " + username);
+        }
+        reply = client.request.invoke(client.client, new String[] {"attemptChallenge", username, server.challengeId});
+        int answers = 0;
+        while ((boolean) client.awaitingInput.invoke(reply)) {
+            reply = client.input.invoke(client.client, "benchmark answer");
+            answers++;
+        }
+        if (answers == 0) {
+            throw new IllegalStateException("Attempt refused for " + username + "; every participant has used their attempts");
+        }
+        return answers;
+    }
+}
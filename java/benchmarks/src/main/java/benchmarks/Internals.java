@@ -0,0 +1,111 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Reaches the server's classes, which are package-private and live in the unnamed package.
+ *
+ * JMH refuses benchmarks in the unnamed package and a named package cannot import from it, so
+ * the benchmarks look the classes up by name. All lookups happen in @Setup methods; measured
+ * code only invokes the resulting method handles.
+ */
+final class Internals {
+    private Internals() {
+    }
+
+    /**
+     * Loads a server class.
+     *
+     * @param  name   the binary name, such as "ClientHandler" or "QuestionBank$Challenge"
+     * @return        the class
+     * @throws ClassNotFoundException if there is no such class
+     */
+    static Class<?> type(String name) throws ClassNotFoundException {
+        return Class.forName(name);
+    }
+
+    /**
+     * Finds a method, whatever its access.
+     *
+     * @param  owner            the declaring class
+     * @param  name             the method name
+     * @param  parameterTypes   the parameter types
+     * @return                  a handle taking the receiver first unless the method is static;
+     *                          a varargs method takes its array as one argument
+     * @throws ReflectiveOperationException if there is no such method
+     */
+    static MethodHandle method(Class<?> owner, String name, Class<?>... parameterTypes) throws ReflectiveOperationException {
+        Method method = owner.getDeclaredMethod(name, parameterTypes);
+        method.setAccessible(true);
+        return MethodHandles.lookup().unreflect(method).asFixedArity();
+    }
+
+    /**
+     * Finds a constructor, whatever its access. An inner class takes its outer instance first.
+     *
+     * @param  owner            the class to construct
+     * @param  parameterTypes   the parameter types
+     * @return                  a handle returning the new instance
+     * @throws ReflectiveOperationException if there is no such constructor
+     */
+    static MethodHandle constructor(Class<?> owner, Class<?>... parameterTypes) throws ReflectiveOperationException {
+        Constructor<?> constructor = owner.getDeclaredConstructor(parameterTypes);
+        constructor.setAccessible(true);
+        return MethodHandles.lookup().unreflectConstructor(constructor);
+    }
+
+    /**
+     * Reads a field, whatever its access.
+     *
+     * @param  target   the instance, or the Class for a static field
+     * @param  name     the field name
+     * @return          the value
+     * @throws ReflectiveOperationException if there is no such field
+     */
+    static Object get(Object target, String name) throws ReflectiveOperationException {
+        Field field = field(target, name);
+        return field.get(target instanceof Class ? null : target);
+    }
+
+    /**
+     * Sets a field, whatever its access. Used to put services into Server's static fields,
+     * which ClientHandler reads when it is created.
+     *
+     * @param  target   the instance, or the Class for a static field
+     * @param  name     the field name
+     * @param  value    the new value
+     * @throws ReflectiveOperationException if there is no such field
+     */
+    static void set(Object target, String name, Object value) throws ReflectiveOperationException {
+        Field field = field(target, name);
+        field.set(target instanceof Class ? null : target, value);
+    }
+
+    /**
+     * Deletes a file or a directory with everything in it.
+     *
+     * @param  file   the file or directory
+     * @throws IOException if the directory cannot be listed
+     */
+    static void delete(File file) throws IOException {
+        try (Stream<Path> files = Files.walk(file.toPath())) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    private static Field field(Object target, String name) throws NoSuchFieldException {
+        Field field = (target instanceof Class ? (Class<?>) target : target.getClass()).getDeclaredField(name);
+        field.setAccessible(true);
+        return field;
+    }
+}
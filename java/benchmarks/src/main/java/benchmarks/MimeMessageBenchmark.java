@@ -0,0 +1,73 @@
+package benchmarks;
+
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import javax.mail.Message;
+import javax.mail.Session;
+import javax.sql.DataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Building an email in MailOutbox.buildMessage and encoding it the way the transport does
+ * before it goes on the wire, without a mail server.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MimeMessageBenchmark {
+    private static final int REPORT_BYTES = 40 * 1024;
+
+    @Param({"text", "report"})
+    public String kind;
+
+    private Object outbox;
+    private Object message;
+    private MethodHandle buildMessage;
+
+    @Setup
+    public void setUp() throws Throwable {
+        Class<?> mailOutbox = Internals.type("MailOutbox");
+        // Never started, so no worker connects anywhere
+        outbox = Internals.constructor(mailOutbox, DataSource.class, Session.class, String.class, int.class, int.class,
+                int.class, int.class, long.class)
+                .invoke((DataSource) null, Session.getInstance(new Properties()), "challenges@example.com", 1, 1, 1, 1, 1000L);
+
+        byte[] report = null;
+        String name = null;
+        if ("report".equals(kind)) {
+            report = new byte[REPORT_BYTES];
+            new Random(1).nextBytes(report);
+            name = "challenge_report.pdf";
+        }
+        Class<?> outboxMessage = Internals.type("MailOutbox$OutboxMessage");
+        message = Internals.constructor(outboxMessage, long.class, String.class, String.class, String.class, String.class,
+                String.class, byte[].class, int.class)
+                .invoke(1L, "participant@example.com", "Challenge Report", "Please find attached your challenge report.",
+                        (String) null, name, report, 0);
+        buildMessage = Internals.method(mailOutbox, "buildMessage", outboxMessage);
+    }
+
+    @Benchmark
+    public Message buildAndEncode() throws Throwable {
+        Message built = (Message) buildMessage.invoke(outbox, message);
+        built.saveChanges();
+        built.writeTo(OutputStream.nullOutputStream());
+        return built;
+    }
+}
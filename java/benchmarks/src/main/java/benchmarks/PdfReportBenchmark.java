@@ -0,0 +1,71 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Rendering the PDF report of a completed attempt in memory, as the report workers do with
+ * REPORT_STORAGE=memory.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PdfReportBenchmark {
+    @Param({"10", "100"})
+    public int questions;
+
+    private Object pipeline;
+    private Object job;
+    private MethodHandle renderToBytes;
+
+    @Setup
+    public void setUp() throws Throwable {
+        Class<?> reportPipeline = Internals.type("ReportPipeline");
+        // Never started, so its workers stay idle
+        pipeline = Internals.constructor(reportPipeline, DataSource.class, Internals.type("MailOutbox"), int.class, int.class,
+                long.class, boolean.class, Internals.type("ReportArchive")).invoke((DataSource) null, null, 1, 1, 200L, true, null);
+
+        // The same lines an AttemptSession collects
+        List<String> reportLines = new ArrayList<>();
+        int totalScore = 0;
+        for (int i = 1; i <= questions; i++) {
+            boolean correct = i % 3 != 0;
+            totalScore += correct ? 2 : 0;
+            reportLines.add("Question ID: " + i + "\n" +
+                            "Question: What is " + i + " times " + i + "?\n" +
+                            "Your Answer: " + (correct ? i * i : 0) + "\n" +
+                            "Correct Answer: " + i * i + "\n" +
+                            "Correct: " + correct + "\n" +
+                            "Score: " + (correct ? 2 : 0) + "\n" +
+                            "Time Taken: " + i * 7 + " seconds\n" +
+                            "Total Score: " + totalScore + "\n" +
+                            "\n");
+        }
+        Class<?> reportJob = Internals.type("ReportPipeline$ReportJob");
+        job = Internals.constructor(reportJob, String.class, String.class, int.class, int.class, List.class)
+                .invoke("bench_user", "bench_user@example.com", 1, 1, reportLines);
+        renderToBytes = Internals.method(reportPipeline, "renderToBytes", reportJob);
+    }
+
+    @Benchmark
+    public byte[] render() throws Throwable {
+        return (byte[]) renderToBytes.invoke(pipeline, job);
+    }
+}
@@ -0,0 +1,62 @@
+package benchmarks;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.lang.invoke.MethodHandle;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A text request through ClientHandler.handleLine: logging, splitting and dispatch, up to the
+ * reply written to the client. Both lines are answered without touching the database.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestParsingBenchmark {
+    @Param({"viewApplicants -", "unknownCommand with several space separated arguments"})
+    public String line;
+
+    private Object handler;
+    private MethodHandle handleLine;
+    private PrintWriter writer;
+    private PrintStream console;
+
+    @Setup
+    public void setUp() throws Throwable {
+        Class<?> clientHandler = Internals.type("ClientHandler");
+        handler = Internals.constructor(clientHandler, DataSource.class).invoke((DataSource) null);
+        handleLine = Internals.method(clientHandler, "handleLine", String.class, PrintWriter.class);
+        writer = new PrintWriter(Writer.nullWriter());
+        // Every request is logged; keep the cost of logging but not the output
+        console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.setOut(console);
+    }
+
+    @Benchmark
+    public void handleLine() throws Throwable {
+        handleLine.invoke(handler, line, writer);
+    }
+}
@@ -1,130 +1,5 @@
 CREATE DATABASE math_quest;
 
-USE math_quest;
-
--- Table for Schools
-CREATE TABLE schools (
-    id INT AUTO_INCREMENT PRIMARY KEY,
-    name VARCHAR(255) NOT NULL,
-    district VARCHAR(255) NOT NULL,
-    school_registration_number VARCHAR(255) UNIQUE NOT NULL,
-    representative_email VARCHAR(255) NOT NULL,
-    representative_name VARCHAR(255) NOT NULL,
-    FOREIGN KEY (representative_email) REFERENCES school_representatives(email),
-    FOREIGN KEY (representative_name) REFERENCES school_representatives(username),
-    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP
-);
-
--- Table for Participants
-CREATE TABLE participants (
-    id INT AUTO_INCREMENT PRIMARY KEY,
-    username VARCHAR(255) UNIQUE NOT NULL,
-    firstname VARCHAR(255) NOT NULL,
-    lastname VARCHAR(255) NOT NULL,
-    school_registration_number VARCHAR(255),
-    email VARCHAR(255) NOT NULL,
-    date_of_birth DATE NOT NULL,
-    status VARCHAR(255) NOT NULL DEFAULT 'confirmed',
-    password VARCHAR(255) NOT NULL,
-    image BLOB,
-    FOREIGN KEY (school_registration_number) REFERENCES schools(school_registration_number),
-    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP
-);
-
--- Table for Applicants
-CREATE TABLE applicants (
-    id INT AUTO_INCREMENT PRIMARY KEY,
-    username VARCHAR(255) UNIQUE NOT NULL,
-    firstname VARCHAR(255) NOT NULL,
-    lastname VARCHAR(255) NOT NULL,
-    school_registration_number VARCHAR(255),
-    email VARCHAR(255) NOT NULL,
-    date_of_birth DATE NOT NULL,
-    password VARCHAR(255) NOT NULL,
-    image BLOB,
-    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP
-);
-
--- Table for Challenges
-CREATE TABLE challenges (
-    id INT AUTO_INCREMENT PRIMARY KEY,
-    name VARCHAR(255) NOT NULL,
-    start_date DATE NOT NULL,
-    end_date DATE NOT NULL,
-    duration INT NOT NULL,
-    num_questions INT NOT NULL,
-    description VARCHAR(255) NOT NULL,
-    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP
-);
-
--- Table for Questions
-CREATE TABLE questions (
-    id INT AUTO_INCREMENT PRIMARY KEY,
-    question_text TEXT NOT NULL,
-    answer TEXT NOT NULL,
-    marks INT NOT NULL,
-    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP
-);
-
--- Table for Participant Attempts
-CREATE TABLE participant_attempts (
-    id INT AUTO_INCREMENT PRIMARY KEY,
-    participant_id INT NOT NULL,
-    challenge_id INT NOT NULL,
-    question_id INT NOT NULL,
-    attempt_number INT NOT NULL,
-    is_correct BOOLEAN NOT NULL,
-    score INT NOT NULL,
-    time_taken INT NOT NULL,
-    attempt_date TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-    FOREIGN KEY (participant_id) REFERENCES participants(id),
-    FOREIGN KEY (challenge_id) REFERENCES challenges(id),
-    FOREIGN KEY (question_id) REFERENCES questions(id),
-    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP
-);
-
-
-
--- Table for Rejected Applicants
-CREATE TABLE rejected_applicants (
-    id INT AUTO_INCREMENT PRIMARY KEY,
-    username VARCHAR(255) NOT NULL,
-    reason TEXT NOT NULL,
-    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP
-);
-
-CREATE TABLE school_representatives (
-    id INT AUTO_INCREMENT PRIMARY KEY,
-    username VARCHAR(255) UNIQUE NOT NULL,
-    firstname VARCHAR(255) NOT NULL,
-    lastname VARCHAR(255) NOT NULL,
-    email VARCHAR(255) NOT NULL,
-    password VARCHAR(255) NOT NULL,
-    validated BOOLEAN DEFAULT FALSE,
-    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP
-);
-
-CREATE TABLE administrators (
-    id INT AUTO_INCREMENT PRIMARY KEY,
-    name VARCHAR(255) NOT NULL,
-    email VARCHAR(255) UNIQUE NOT NULL,
-    password VARCHAR(255) NOT NULL,
-    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP
-);
-
-CREATE TABLE challenge_questions (
-    id INT AUTO_INCREMENT PRIMARY KEY,
-    challenge_id INT NOT NULL,
-    question_id INT NOT NULL,
-    FOREIGN KEY (challenge_id) REFERENCES challenges(id),
-    FOREIGN KEY (question_id) REFERENCES questions(id)
-);
+-- The tables are created by the server on startup from the versioned scripts in migrations/,
+-- which MigrationRunner applies in order and records in schema_migrations. To change the
+-- schema, add a new V<next>__<description>.sql script there; never edit an applied one.
@@ -0,0 +1,18 @@
+-- Emails waiting to be sent by the server's mail outbox; 'held' rows wait to be merged into a digest
+CREATE TABLE IF NOT EXISTS email_outbox (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    recipient VARCHAR(255) NOT NULL,
+    subject VARCHAR(255) NOT NULL,
+    body TEXT NOT NULL,
+    attachment_path VARCHAR(512),
+    attachment_name VARCHAR(255),
+    attachment LONGBLOB,
+    status VARCHAR(16) NOT NULL DEFAULT 'pending',
+    attempts INT NOT NULL DEFAULT 0,
+    next_attempt_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    last_error TEXT,
+    INDEX idx_email_outbox_due (status, next_attempt_at),
+    INDEX idx_email_outbox_recipient (status, recipient),
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP
+);
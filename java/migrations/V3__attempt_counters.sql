@@ -0,0 +1,31 @@
+-- Answers stored twice by the old count-then-insert submit; the first copy of each is kept
+DELETE duplicate FROM participant_attempts duplicate
+JOIN participant_attempts original
+    ON original.participant_id = duplicate.participant_id AND original.challenge_id = duplicate.challenge_id
+    AND original.attempt_number = duplicate.attempt_number AND original.question_id = duplicate.question_id
+    AND original.id < duplicate.id;
+
+-- One row per answered question of an attempt, so a batch replayed from the attempt journal is stored once.
+-- Its (participant_id, challenge_id) prefix also serves lookups of a participant's attempts at a challenge.
+ALTER TABLE participant_attempts
+    ADD UNIQUE KEY uq_participant_attempts_answer (participant_id, challenge_id, attempt_number, question_id);
+
+-- Attempts used per participant and challenge, claimed atomically when an attempt starts. The
+-- limit counts attempts, while new attempts are numbered after the highest number ever used.
+CREATE TABLE IF NOT EXISTS participant_challenge_attempts (
+    participant_id INT NOT NULL,
+    challenge_id INT NOT NULL,
+    attempts_used INT NOT NULL DEFAULT 0,
+    last_attempt_number INT NOT NULL DEFAULT 0,
+    PRIMARY KEY (participant_id, challenge_id),
+    FOREIGN KEY (participant_id) REFERENCES participants(id),
+    FOREIGN KEY (challenge_id) REFERENCES challenges(id),
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP
+);
+
+-- Carries over attempts recorded before the counter table existed. Older attempt numbers were not
+-- always contiguous, so the distinct numbers are counted, capped at the three attempts allowed,
+-- and numbering continues from the highest.
+INSERT IGNORE INTO participant_challenge_attempts (participant_id, challenge_id, attempts_used, last_attempt_number)
+SELECT participant_id, challenge_id, LEAST(COUNT(DISTINCT attempt_number), 3), MAX(attempt_number)
+FROM participant_attempts GROUP BY participant_id, challenge_id;
@@ -0,0 +1,16 @@
+-- Secondary indexes for the columns the server filters on
+
+-- Applicants of a school, for representatives reviewing their applicants
+CREATE INDEX idx_applicants_school ON applicants (school_registration_number);
+
+-- Participant lookups by email address
+CREATE INDEX idx_participants_email ON participants (email);
+
+-- Questions of a challenge; covers the join to questions without touching the rows
+CREATE INDEX idx_challenge_questions_challenge ON challenge_questions (challenge_id, question_id);
+
+-- The rejected check made on every registration
+CREATE INDEX idx_rejected_applicants_username ON rejected_applicants (username);
+
+-- Open challenges for viewChallenges
+CREATE INDEX idx_challenges_end_date ON challenges (end_date);
@@ -0,0 +1,8 @@
+-- Applicants of a school in username order, so viewApplicants pages are index range reads
+CREATE INDEX idx_applicants_school_username ON applicants (school_registration_number, username);
+
+-- Superseded by the index above
+DROP INDEX idx_applicants_school ON applicants;
+
+-- Schools of a representative
+CREATE INDEX idx_schools_representative ON schools (representative_name);
@@ -0,0 +1,5 @@
+-- Images move to the content-addressed BlobStore; the tables keep only its SHA-256 reference.
+-- The image columns stay for rows registered before the move.
+ALTER TABLE applicants ADD COLUMN image_hash CHAR(64) NULL AFTER image;
+
+ALTER TABLE participants ADD COLUMN image_hash CHAR(64) NULL AFTER image;